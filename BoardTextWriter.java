@@ -0,0 +1,189 @@
+package floodit;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// represents a writer of a board as text, streamed through one fixed buffer so
+// a board of any size costs linear time and the same memory. Cells are spelled
+// out of the palette's name table and digits written in place, so nothing is
+// allocated per cell. Two layouts are written:
+//   text     "Cell[(x,y) NAME] " for every cell, one line per column, as
+//            renderBoardText has always shown the board
+//   compact  "floodit <size> <colors>", then the palette as RGB hex, then one
+//            line per column with one hex digit per cell (two past 16 colors)
+class BoardTextWriter {
+  PackedBoard board;
+  char[] buffer = new char[1 << 14];
+  int length = 0;
+  // the palette's names as characters, made once per write
+  char[][] names;
+
+  // where the buffer goes when it fills: exactly one of these is set
+  Appendable out;
+  WritableByteChannel channel;
+  CharBuffer view = CharBuffer.wrap(this.buffer);
+  ByteBuffer bytes = ByteBuffer.allocate(this.buffer.length);
+
+  BoardTextWriter(PackedBoard board) {
+    this.board = board;
+  }
+
+  // writes the board as text to the given appendable
+  void writeText(Appendable out) throws IOException {
+    start(out, null);
+    text();
+  }
+
+  // writes the board as text to the given channel, in ASCII
+  void writeText(WritableByteChannel channel) throws IOException {
+    start(null, channel);
+    text();
+  }
+
+  // writes the board in the compact layout to the given appendable
+  void writeCompact(Appendable out) throws IOException {
+    start(out, null);
+    compact();
+  }
+
+  // writes the board in the compact layout to the given channel, in ASCII
+  void writeCompact(WritableByteChannel channel) throws IOException {
+    start(null, channel);
+    compact();
+  }
+
+  // at least the number of characters the text layout takes, to size a
+  // builder up front
+  long textLengthBound() {
+    int size = this.board.size;
+    int digits = String.valueOf(size - 1).length();
+    int longestName = 0;
+    for (int k = 0; k < this.board.palette.size(); k++) {
+      longestName = Math.max(longestName, this.board.palette.name(k).length());
+    }
+    return (long) this.board.cellCount() * (11 + 2 * digits + longestName) + size;
+  }
+
+  // points the writer at a new destination
+  void start(Appendable out, WritableByteChannel channel) {
+    this.out = out;
+    this.channel = channel;
+    this.length = 0;
+    Palette palette = this.board.palette;
+    this.names = new char[palette.size()][];
+    for (int k = 0; k < palette.size(); k++) {
+      this.names[k] = palette.name(k).toCharArray();
+    }
+  }
+
+  // writes every cell as text
+  void text() throws IOException {
+    int size = this.board.size;
+    for (int x = 0; x < size; x++) {
+      int base = this.board.index(x, 0);
+      for (int y = 0; y < size; y++) {
+        write("Cell[(");
+        write(x);
+        write(',');
+        write(y);
+        write(") ");
+        write(this.names[this.board.colorIndexAt(base + y)]);
+        write("] ");
+      }
+      write('\n');
+    }
+    flush();
+  }
+
+  // writes the board in the compact layout
+  void compact() throws IOException {
+    int size = this.board.size;
+    Palette palette = this.board.palette;
+    int digits = palette.size() <= 16 ? 1 : 2;
+    write("floodit ");
+    write(size);
+    write(' ');
+    write(palette.size());
+    write('\n');
+    for (int k = 0; k < palette.size(); k++) {
+      if (k > 0) {
+        write(' ');
+      }
+      writeHex(palette.rgb(k) & 0xFFFFFF, 6);
+    }
+    write('\n');
+    for (int x = 0; x < size; x++) {
+      int base = this.board.index(x, 0);
+      for (int y = 0; y < size; y++) {
+        writeHex(this.board.colorIndexAt(base + y), digits);
+      }
+      write('\n');
+    }
+    flush();
+  }
+
+  // adds one character
+  void write(char c) throws IOException {
+    if (this.length == this.buffer.length) {
+      flush();
+    }
+    this.buffer[this.length] = c;
+    this.length++;
+  }
+
+  // adds the given characters
+  void write(char[] chars) throws IOException {
+    for (char c : chars) {
+      write(c);
+    }
+  }
+
+  // adds the given string
+  void write(String s) throws IOException {
+    for (int k = 0; k < s.length(); k++) {
+      write(s.charAt(k));
+    }
+  }
+
+  // adds the given number in decimal
+  void write(int n) throws IOException {
+    if (n >= 10) {
+      write(n / 10);
+    }
+    write((char) ('0' + n % 10));
+  }
+
+  // adds the given number as the given count of lowercase hex digits
+  void writeHex(int n, int digits) throws IOException {
+    for (int shift = 4 * (digits - 1); shift >= 0; shift -= 4) {
+      write(Character.forDigit((n >>> shift) & 0xF, 16));
+    }
+  }
+
+  // hands the buffered characters on to the destination
+  void flush() throws IOException {
+    if (this.length == 0) {
+      return;
+    }
+    if (this.channel != null) {
+      this.bytes.clear();
+      for (int k = 0; k < this.length; k++) {
+        this.bytes.put((byte) this.buffer[k]);
+      }
+      this.bytes.flip();
+      while (this.bytes.hasRemaining()) {
+        this.channel.write(this.bytes);
+      }
+    }
+    else if (this.out instanceof Writer) {
+      ((Writer) this.out).write(this.buffer, 0, this.length);
+    }
+    else {
+      this.out.append(this.view, 0, this.length);
+    }
+    this.length = 0;
+  }
+}
@@ -0,0 +1,456 @@
+package floodit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// represents an automated player: given a view of a game that is not won,
+// picks the palette index of the color to play next. One strategy plays many
+// games at once across the tournament's threads, so it keeps nothing between
+// calls
+interface IFloodStrategy {
+  // the name the strategy is reported under
+  String name();
+
+  // the color to play in the game seen through the given view
+  int chooseColor(GameView view);
+}
+
+// represents a read-only view of a game: what a player may look at, read from
+// the region graph so it is exact right after every move even when the
+// flooded bits of the cells lag behind. The engine itself stays out of reach,
+// nothing here writes to the live graph, and anything a strategy wants to
+// play ahead on is handed out as a copy. One view serves one game at a time
+class GameView {
+  private final FloodEngine engine;
+  // marks of the regions already counted by gains, one stamp per call
+  int[] seen = new int[0];
+  int stamp = 0;
+
+  GameView(FloodEngine engine) {
+    this.engine = engine;
+  }
+
+  // the number of cells along one side of the board
+  int size() {
+    return this.engine.size;
+  }
+
+  // the number of colors in the palette
+  int colorCount() {
+    return this.engine.palette.size();
+  }
+
+  // the palette index of the color the flood shows
+  int floodColor() {
+    return this.engine.regions.floodColor();
+  }
+
+  // the number of flooded cells
+  int floodedCount() {
+    return this.engine.regions.floodedCells;
+  }
+
+  // the number of regions left on the board, the flood counting as one
+  int regionsLeft() {
+    return this.engine.regions.regionsLeft;
+  }
+
+  // the number of moves played, and the number still allowed
+  int movesMade() {
+    return this.engine.movesMade;
+  }
+
+  int movesLeft() {
+    return this.engine.movesLeft();
+  }
+
+  // checks if the cell at the given position has been flooded
+  boolean isFlooded(int x, int y) {
+    return this.engine.regions.isFlooded(this.engine.board.index(x, y));
+  }
+
+  // the palette index of the color the cell at the given position shows
+  int colorIndexAt(int x, int y) {
+    int index = this.engine.board.index(x, y);
+    if (this.engine.regions.isFlooded(index)) {
+      return floodColor();
+    }
+    return this.engine.board.storedColorIndexAt(index);
+  }
+
+  // the number of cells each color would capture if played now
+  long[] gains() {
+    RegionGraph g = this.engine.regions;
+    long[] gains = new long[colorCount()];
+    if (this.seen.length < g.regionCount) {
+      this.seen = new int[g.regionCount];
+      this.stamp = 0;
+    }
+    this.stamp++;
+    for (int k = 0; k < g.floodNeighbors.size(); k++) {
+      int r = root(g, g.floodNeighbors.get(k));
+      if (r != g.floodRoot && this.seen[r] != this.stamp) {
+        this.seen[r] = this.stamp;
+        gains[g.color[r]] += g.cellCount[r];
+      }
+    }
+    return gains;
+  }
+
+  // the region r has been merged into, found without compressing the path
+  // the way find does; merged regions hang straight off the flood's root, so
+  // this is at most one step
+  int root(RegionGraph g, int r) {
+    while (g.parent[r] != r) {
+      r = g.parent[r];
+    }
+    return r;
+  }
+
+  // the Zobrist hash of the position
+  long hash() {
+    return this.engine.hash();
+  }
+
+  // a copy of the region graph to play moves on
+  RegionGraph regions() {
+    return new RegionGraph(this.engine.regions);
+  }
+
+  // a snapshot of the position for the solver
+  RegionSnapshot snapshot() {
+    return new RegionSnapshot(this.engine);
+  }
+}
+
+// represents the player who always plays the color capturing the most cells,
+// the lowest color on ties
+class GreedyAreaStrategy implements IFloodStrategy {
+  public String name() {
+    return "greedy-area";
+  }
+
+  public int chooseColor(GameView view) {
+    long[] gains = view.gains();
+    int best = -1;
+    for (int c = 0; c < gains.length; c++) {
+      if (c != view.floodColor() && (best < 0 || gains[c] > gains[best])) {
+        best = c;
+      }
+    }
+    return best;
+  }
+}
+
+// represents the player who plays the color that leaves the most cells next
+// to the flood, so the move after it has the most to choose from; ties go to
+// the color capturing more now
+class GreedyFrontierStrategy implements IFloodStrategy {
+  public String name() {
+    return "greedy-frontier";
+  }
+
+  public int chooseColor(GameView view) {
+    RegionGraph g = view.regions();
+    long[] gains = view.gains();
+    MoveRecord record = new MoveRecord(0, 0);
+    int best = -1;
+    long bestFrontier = -1;
+    for (int c = 0; c < gains.length; c++) {
+      if (gains[c] == 0) {
+        continue;
+      }
+      record.absorbed.clear();
+      g.applyMove(c, record);
+      long frontier = 0;
+      for (int k = 0; k < g.floodNeighbors.size(); k++) {
+        frontier += g.cellCount[g.floodNeighbors.get(k)];
+      }
+      g.undoMove(record);
+      if (frontier > bestFrontier || (frontier == bestFrontier && gains[c] > gains[best])) {
+        best = c;
+        bestFrontier = frontier;
+      }
+    }
+    return best;
+  }
+}
+
+// represents the player who tries every line of depth capturing moves and
+// plays the first move of the line that floods the most cells, or wins the
+// soonest; lines are played and taken back on one copy of the region graph
+class LookaheadStrategy implements IFloodStrategy {
+  int depth;
+
+  LookaheadStrategy(int depth) {
+    if (depth < 1) {
+      throw new IllegalArgumentException("The lookahead depth must be at least 1.");
+    }
+    this.depth = depth;
+  }
+
+  public String name() {
+    return "lookahead-" + this.depth;
+  }
+
+  public int chooseColor(GameView view) {
+    RegionGraph g = view.regions();
+    MoveRecord[] records = new MoveRecord[this.depth];
+    for (int d = 0; d < this.depth; d++) {
+      records[d] = new MoveRecord(0, 0);
+    }
+    long[] gains = view.gains();
+    int best = -1;
+    long bestScore = -1;
+    for (int c = 0; c < gains.length; c++) {
+      if (gains[c] == 0) {
+        continue;
+      }
+      long score = play(g, c, 0, records, gains.length);
+      if (score > bestScore) {
+        best = c;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+
+  // the best score reachable after playing c at the given depth: the cells
+  // flooded at the end of the line, or above any of those for a win, more
+  // the sooner it comes
+  long play(RegionGraph g, int c, int at, MoveRecord[] records, int colorCount) {
+    MoveRecord record = records[at];
+    record.absorbed.clear();
+    g.applyMove(c, record);
+    long score;
+    if (g.isOneRegion()) {
+      score = Long.MAX_VALUE - at;
+    }
+    else if (at + 1 == this.depth) {
+      score = g.floodedCells;
+    }
+    else {
+      score = -1;
+      boolean[] captures = new boolean[colorCount];
+      for (int k = 0; k < g.floodNeighbors.size(); k++) {
+        captures[g.color[g.find(g.floodNeighbors.get(k))]] = true;
+      }
+      for (int next = 0; next < colorCount; next++) {
+        if (captures[next]) {
+          score = Math.max(score, play(g, next, at + 1, records, colorCount));
+        }
+      }
+    }
+    g.undoMove(record);
+    return score;
+  }
+}
+
+// represents the player who runs a beam search of the given width from every
+// position and plays the first move of the line it finds; positions past the
+// solvers' region limit are played greedily
+class SolverStrategy implements IFloodStrategy {
+  int width;
+  GreedyAreaStrategy fallback = new GreedyAreaStrategy();
+
+  SolverStrategy(int width) {
+    if (width < 1) {
+      throw new IllegalArgumentException("The beam width must be at least 1.");
+    }
+    this.width = width;
+  }
+
+  public String name() {
+    return "solver-beam-" + this.width;
+  }
+
+  public int chooseColor(GameView view) {
+    if (view.regionsLeft() > RegionSnapshot.MAX_REGIONS) {
+      return this.fallback.chooseColor(view);
+    }
+    return new FloodSolver(view.snapshot()).solveBeam(this.width, 0).firstMove();
+  }
+}
+
+// represents how one strategy did over every board of a tournament: games
+// won, the moves each won game took, and the decisions made and the time the
+// strategy spent making them, summed over all its games
+class StrategyReport {
+  String name;
+  int games;
+  int wins;
+  int[] winningMoves;
+  long decisions;
+  long nanos;
+
+  StrategyReport(String name, int games, int wins, int[] winningMoves, long decisions,
+      long nanos) {
+    this.name = name;
+    this.games = games;
+    this.wins = wins;
+    this.winningMoves = winningMoves;
+    this.decisions = decisions;
+    this.nanos = nanos;
+  }
+
+  // the share of games won
+  double winRate() {
+    return this.games == 0 ? 0 : (double) this.wins / this.games;
+  }
+
+  // the mean number of moves of the games won, or 0 when none were
+  double meanMoves() {
+    long total = 0;
+    for (int moves : this.winningMoves) {
+      total += moves;
+    }
+    return this.wins == 0 ? 0 : (double) total / this.wins;
+  }
+
+  // the nearest-rank percentile of the moves of the games won, or -1 when
+  // none were
+  int percentileMoves(double percent) {
+    if (this.wins == 0) {
+      return -1;
+    }
+    int rank = (int) Math.ceil(percent / 100 * this.wins);
+    return this.winningMoves[Math.max(0, Math.min(this.wins - 1, rank - 1))];
+  }
+
+  // the number of colors the strategy picked per second of its own time
+  double decisionsPerSecond() {
+    return this.nanos == 0 ? 0 : this.decisions * 1e9 / this.nanos;
+  }
+
+  // one line summing the report up
+  String describe() {
+    return String.format("%-16s won %5.1f%%  moves mean %6.2f p50 %d p90 %d p99 %d"
+        + "  %,.0f decisions/s", this.name, 100 * winRate(), meanMoves(), percentileMoves(50),
+        percentileMoves(90), percentileMoves(99), decisionsPerSecond());
+  }
+}
+
+// represents a tournament: every strategy plays every board, board b dealt
+// from seed baseSeed + b so all strategies face the same boards. Games run
+// headless on engines of their own, spread across a fork-join pool of the
+// given parallelism, and come out the same on any number of threads
+class Tournament {
+  ArrayList<IFloodStrategy> strategies;
+  long baseSeed;
+  int boards;
+  int size;
+  int colors;
+  // the move limit of every game, or 0 for the engine's own
+  int moveLimit = 0;
+  int parallelism = Runtime.getRuntime().availableProcessors();
+
+  // the moves of every game, whether it was won, the decisions it took and
+  // the nanoseconds they took, by strategy then board
+  int[][] moves;
+  boolean[][] won;
+  long[][] decisions;
+  long[][] nanos;
+
+  Tournament(ArrayList<IFloodStrategy> strategies, long baseSeed, int boards, int size,
+      int colors) {
+    if (boards < 1) {
+      throw new IllegalArgumentException("A tournament needs at least one board.");
+    }
+    this.strategies = strategies;
+    this.baseSeed = baseSeed;
+    this.boards = boards;
+    this.size = size;
+    this.colors = colors;
+  }
+
+  // plays every game and reports on each strategy, in order
+  ArrayList<StrategyReport> run() {
+    int n = this.strategies.size();
+    this.moves = new int[n][this.boards];
+    this.won = new boolean[n][this.boards];
+    this.decisions = new long[n][this.boards];
+    this.nanos = new long[n][this.boards];
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, this.parallelism));
+    try {
+      pool.invoke(new TournamentGames(this, 0, n * this.boards));
+    }
+    finally {
+      pool.shutdown();
+    }
+    ArrayList<StrategyReport> reports = new ArrayList<StrategyReport>();
+    for (int s = 0; s < n; s++) {
+      int[] winning = new int[this.boards];
+      int wins = 0;
+      long decisions = 0;
+      long nanos = 0;
+      for (int b = 0; b < this.boards; b++) {
+        if (this.won[s][b]) {
+          winning[wins] = this.moves[s][b];
+          wins++;
+        }
+        decisions += this.decisions[s][b];
+        nanos += this.nanos[s][b];
+      }
+      winning = Arrays.copyOf(winning, wins);
+      Arrays.sort(winning);
+      reports.add(new StrategyReport(this.strategies.get(s).name(), this.boards, wins, winning,
+          decisions, nanos));
+    }
+    return reports;
+  }
+
+  // plays the given strategy on the given board until it wins or runs out of
+  // moves
+  void play(int s, int b, FloodEngine engine) {
+    IFloodStrategy strategy = this.strategies.get(s);
+    engine.newGame(this.baseSeed + b, this.size, this.colors);
+    if (this.moveLimit > 0) {
+      engine.moveLimit = this.moveLimit;
+    }
+    GameView view = new GameView(engine);
+    long decisions = 0;
+    long nanos = 0;
+    while (!engine.isWon() && engine.movesLeft() > 0) {
+      long start = System.nanoTime();
+      int color = strategy.chooseColor(view);
+      nanos += System.nanoTime() - start;
+      decisions++;
+      // the engine refuses colors outside the palette
+      engine.applyMove(color);
+    }
+    this.moves[s][b] = engine.movesMade;
+    this.won[s][b] = engine.isWon();
+    this.decisions[s][b] = decisions;
+    this.nanos[s][b] = nanos;
+  }
+}
+
+// represents the playing of a range of a tournament's games, numbered by
+// strategy then board, split in halves across the pool down to one game each
+class TournamentGames extends RecursiveAction {
+  Tournament tournament;
+  int from;
+  int to;
+
+  TournamentGames(Tournament tournament, int from, int to) {
+    this.tournament = tournament;
+    this.from = from;
+    this.to = to;
+  }
+
+  // plays the games from until to
+  protected void compute() {
+    if (this.to - this.from > 1) {
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new TournamentGames(this.tournament, this.from, middle),
+          new TournamentGames(this.tournament, middle, this.to));
+      return;
+    }
+    FloodEngine engine = new FloodEngine();
+    for (int game = this.from; game < this.to; game++) {
+      this.tournament.play(game / this.tournament.boards, game % this.tournament.boards, engine);
+    }
+  }
+}
@@ -0,0 +1,462 @@
+package floodit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.SplittableRandom;
+
+// represents a board too big to deal up front, cut into square chunks that are
+// dealt the first time a flood or a view touches them. A chunk's cells come
+// from a generator seeded by the board seed and the chunk's position alone, so
+// a chunk nobody has flooded into can be dropped and dealt again identically;
+// memory follows the part of the board in play rather than its size. Cells are
+// addressed by long coordinates, and a chunk keeps one byte per cell for its
+// color, column after column like PackedBoard, then one bit per cell for
+// whether it is flooded, in a slot of a ChunkStore outside the Java heap
+class ChunkedBoard {
+  long size;
+  int numberOfColors;
+  long seed;
+  long boardSeed;
+  Palette palette = new Palette();
+
+  // chunks are 2^chunkBits cells on a side
+  int chunkBits;
+  int chunkSide;
+  int chunkCells;
+  ChunkStore store;
+  ZobristKeys mixer;
+
+  // every chunk in memory by its packed position, and the unflooded ones
+  // among them from least to most recently used
+  HashMap<Long, Chunk> chunks = new HashMap<Long, Chunk>();
+  LinkedHashMap<Long, Chunk> clean = new LinkedHashMap<Long, Chunk>(16, 0.75f, true);
+  // the most unflooded chunks kept before the least recently used one goes
+  int maxCleanChunks = 256;
+  // the chunk used last, so walking within one chunk skips the lookup
+  Chunk last = null;
+
+  byte[] scratch;
+  long chunksDealt = 0;
+  long evictions = 0;
+
+  // constructor for a board of the given size dealt from the given seed, in
+  // chunks 2^chunkBits cells on a side kept in the given store
+  ChunkedBoard(long seed, long size, int numberOfColors, int chunkBits, ChunkStore store) {
+    if (size < 2 || size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "The size of the board must be between 2 and " + Integer.MAX_VALUE + ".");
+    }
+    if (numberOfColors < 3 || numberOfColors > 256) {
+      throw new IllegalArgumentException("The number of colors must be between 3 and 256.");
+    }
+    if (chunkBits < 3 || chunkBits > 12) {
+      throw new IllegalArgumentException("The chunks must be between 3 and 12 bits wide.");
+    }
+    this.size = size;
+    this.numberOfColors = numberOfColors;
+    this.seed = seed;
+    this.chunkBits = chunkBits;
+    this.chunkSide = 1 << chunkBits;
+    this.chunkCells = this.chunkSide * this.chunkSide;
+    if (store.slotBytes < slotBytes(chunkBits)) {
+      throw new IllegalArgumentException("The slots of the store are too small for the chunks.");
+    }
+    this.store = store;
+    this.scratch = new byte[this.chunkCells];
+    // picks the palette and the board seed the way FloodEngine does
+    SplittableRandom rand = new SplittableRandom(seed);
+    this.palette.choose(rand, numberOfColors);
+    this.boardSeed = rand.nextLong();
+    this.mixer = new ZobristKeys(this.boardSeed);
+  }
+
+  // bytes a chunk 2^chunkBits cells on a side takes: its colors, then its
+  // flooded bits
+  int slotBytes(int chunkBits) {
+    int cells = 1 << (2 * chunkBits);
+    return cells + cells / 8;
+  }
+
+  // the key of the chunk in chunk column cx, chunk row cy
+  long chunkKey(long cx, long cy) {
+    return (cx << 32) | cy;
+  }
+
+  // the chunk holding cell (x, y), dealt now if it is not in memory
+  Chunk chunkAt(long x, long y) {
+    long cx = x >>> this.chunkBits;
+    long cy = y >>> this.chunkBits;
+    Chunk chunk = this.last;
+    if (chunk != null && chunk.cx == cx && chunk.cy == cy) {
+      return chunk;
+    }
+    long key = chunkKey(cx, cy);
+    chunk = this.chunks.get(key);
+    if (chunk == null) {
+      chunk = deal(cx, cy);
+    }
+    else if (chunk.floodedCells == 0) {
+      // only marks it as just used
+      this.clean.get(key);
+    }
+    this.last = chunk;
+    return chunk;
+  }
+
+  // deals the chunk in chunk column cx, chunk row cy into a free slot, first
+  // dropping the least recently used unflooded chunk if too many are kept
+  Chunk deal(long cx, long cy) {
+    if (this.clean.size() >= this.maxCleanChunks) {
+      Chunk eldest = this.clean.values().iterator().next();
+      evict(eldest);
+    }
+    long key = chunkKey(cx, cy);
+    Chunk chunk = new Chunk(cx, cy, this.store.allocate());
+    SplittableRandom rand = new SplittableRandom(this.mixer.mix(this.boardSeed ^ key
+        * 0x9E3779B97F4A7C15L));
+    for (int local = 0; local < this.chunkCells; local++) {
+      this.scratch[local] = (byte) rand.nextInt(this.numberOfColors);
+    }
+    ByteBuffer block = this.store.block(chunk.slot);
+    int base = this.store.offset(chunk.slot);
+    block.put(base, this.scratch, 0, this.chunkCells);
+    for (int k = base + this.chunkCells; k < base + this.chunkCells + this.chunkCells / 8; k++) {
+      block.put(k, (byte) 0);
+    }
+    this.chunks.put(key, chunk);
+    this.clean.put(key, chunk);
+    this.chunksDealt++;
+    return chunk;
+  }
+
+  // drops the given unflooded chunk and frees its slot
+  void evict(Chunk chunk) {
+    long key = chunkKey(chunk.cx, chunk.cy);
+    this.chunks.remove(key);
+    this.clean.remove(key);
+    this.store.free(chunk.slot);
+    if (this.last == chunk) {
+      this.last = null;
+    }
+    this.evictions++;
+  }
+
+  // position of cell (x, y) within its chunk
+  int local(long x, long y) {
+    int mask = this.chunkSide - 1;
+    return ((int) x & mask) * this.chunkSide + ((int) y & mask);
+  }
+
+  // checks if (x, y) lies on the board
+  boolean isInside(long x, long y) {
+    return x >= 0 && y >= 0 && x < this.size && y < this.size;
+  }
+
+  // number of cells on the board
+  long cellCount() {
+    return this.size * this.size;
+  }
+
+  // palette index the given cell was dealt, or the flood's color for the
+  // top-left cell
+  int storedColorIndexAt(long x, long y) {
+    Chunk chunk = chunkAt(x, y);
+    return this.store.block(chunk.slot).get(this.store.offset(chunk.slot) + local(x, y)) & 0xFF;
+  }
+
+  // palette index of the color at the given cell; flooded cells show the color
+  // of the top-left cell
+  int colorIndexAt(long x, long y) {
+    if (isFlooded(x, y)) {
+      return storedColorIndexAt(0, 0);
+    }
+    return storedColorIndexAt(x, y);
+  }
+
+  // recolors the flood; the top-left cell carries the color of all of it
+  void setFloodColor(int colorIndex) {
+    Chunk chunk = chunkAt(0, 0);
+    this.store.block(chunk.slot).put(this.store.offset(chunk.slot), (byte) colorIndex);
+  }
+
+  // checks if the given cell is flooded
+  boolean isFlooded(long x, long y) {
+    Chunk chunk = chunkAt(x, y);
+    int local = local(x, y);
+    int bits = this.store.block(chunk.slot).get(this.store.offset(chunk.slot) + this.chunkCells
+        + (local >>> 3));
+    return (bits & (1 << (local & 7))) != 0;
+  }
+
+  // marks the given unflooded cell as flooded; its chunk can no longer be
+  // dealt again, so it stays in memory from now on
+  void flood(long x, long y) {
+    Chunk chunk = chunkAt(x, y);
+    int local = local(x, y);
+    ByteBuffer block = this.store.block(chunk.slot);
+    int at = this.store.offset(chunk.slot) + this.chunkCells + (local >>> 3);
+    block.put(at, (byte) (block.get(at) | (1 << (local & 7))));
+    if (chunk.floodedCells == 0) {
+      this.clean.remove(chunkKey(chunk.cx, chunk.cy));
+    }
+    chunk.floodedCells++;
+  }
+
+  // number of chunks in memory
+  int residentChunks() {
+    return this.chunks.size();
+  }
+
+  // writes the RGB color of every cell of the width by height view whose
+  // top-left cell is (left, top) into pixels, row after row; only the chunks
+  // under the view are dealt
+  void readView(long left, long top, int width, int height, int[] pixels) {
+    for (int row = 0; row < height; row++) {
+      for (int column = 0; column < width; column++) {
+        long x = left + column;
+        long y = top + row;
+        pixels[row * width + column] = isInside(x, y) ? this.palette.rgb(colorIndexAt(x, y)) : 0;
+      }
+    }
+  }
+
+  // frees the store behind the board
+  void close() throws IOException {
+    this.chunks.clear();
+    this.clean.clear();
+    this.last = null;
+    this.store.close();
+  }
+}
+
+// represents one chunk in memory: its position in chunks and the store slot
+// holding its cells
+class Chunk {
+  long cx;
+  long cy;
+  int slot;
+  // cells of the chunk the flood has taken; a chunk with none can be dealt
+  // again instead of kept
+  int floodedCells = 0;
+
+  Chunk(long cx, long cy, int slot) {
+    this.cx = cx;
+    this.cy = cy;
+    this.slot = slot;
+  }
+}
+
+// represents memory outside the Java heap cut into equal slots, handed out
+// and taken back one at a time. The slots live in blocks that are added as
+// more are needed: direct buffers, or pages of a file mapped into memory so
+// the operating system can write cold ones out instead of the heap holding them
+class ChunkStore {
+  int slotBytes;
+  int slotsPerBlock;
+  ArrayList<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+  IntList freeSlots = new IntList();
+  int slotsUsed = 0;
+  // the file the blocks are mapped from, or null for direct buffers
+  FileChannel file;
+
+  // constructor for a store of direct buffers
+  ChunkStore(int slotBytes, int slotsPerBlock) {
+    if (slotBytes < 1 || slotsPerBlock < 1
+        || (long) slotBytes * slotsPerBlock > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A block of slots must hold between 1 and "
+          + Integer.MAX_VALUE + " bytes.");
+    }
+    this.slotBytes = slotBytes;
+    this.slotsPerBlock = slotsPerBlock;
+  }
+
+  // constructor for a store mapped from the given file, which it creates and
+  // overwrites
+  ChunkStore(int slotBytes, int slotsPerBlock, Path path) throws IOException {
+    this(slotBytes, slotsPerBlock);
+    this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  // a free slot, adding a block when there is none
+  int allocate() {
+    if (this.freeSlots.size() > 0) {
+      return this.freeSlots.pop();
+    }
+    if (this.slotsUsed == this.blocks.size() * this.slotsPerBlock) {
+      this.blocks.add(newBlock());
+    }
+    this.slotsUsed++;
+    return this.slotsUsed - 1;
+  }
+
+  // gives the given slot back
+  void free(int slot) {
+    this.freeSlots.add(slot);
+  }
+
+  // a new block of slots
+  ByteBuffer newBlock() {
+    int bytes = this.slotBytes * this.slotsPerBlock;
+    if (this.file == null) {
+      return ByteBuffer.allocateDirect(bytes);
+    }
+    try {
+      return this.file.map(FileChannel.MapMode.READ_WRITE, (long) this.blocks.size() * bytes,
+          bytes);
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("The chunk file could not be extended.", e);
+    }
+  }
+
+  // the block holding the given slot
+  ByteBuffer block(int slot) {
+    return this.blocks.get(slot / this.slotsPerBlock);
+  }
+
+  // where the given slot starts in its block
+  int offset(int slot) {
+    return (slot % this.slotsPerBlock) * this.slotBytes;
+  }
+
+  // bytes set aside for slots so far
+  long reservedBytes() {
+    return (long) this.blocks.size() * this.slotBytes * this.slotsPerBlock;
+  }
+
+  // lets go of the blocks and closes the file, if any
+  void close() throws IOException {
+    this.blocks.clear();
+    this.freeSlots.clear();
+    this.slotsUsed = 0;
+    if (this.file != null) {
+      this.file.close();
+    }
+  }
+}
+
+// represents the flood of a chunked board: the same frontier lists as
+// FloodFrontier, holding cells as packed long coordinates, so a move only
+// deals the chunks at the edge of the flood
+class ChunkedFlood {
+  ChunkedBoard board;
+  ArrayList<LongList> byColor = new ArrayList<LongList>();
+  LongList work = new LongList();
+  long floodedCount = 0;
+  // cells looked at by every expansion so far
+  long scanned = 0;
+
+  ChunkedFlood(ChunkedBoard board) {
+    this.board = board;
+  }
+
+  // the cell (x, y) as one long
+  long pack(long x, long y) {
+    return (x << 32) | y;
+  }
+
+  // the frontier cells of the given color
+  LongList cellsOfColor(int color) {
+    while (this.byColor.size() <= color) {
+      this.byColor.add(new LongList());
+    }
+    return this.byColor.get(color);
+  }
+
+  // floods the top-left cell and everything connected to it in its color,
+  // returns the number of flooded cells
+  long reset() {
+    for (LongList cells : this.byColor) {
+      cells.clear();
+    }
+    this.board.flood(0, 0);
+    this.work.add(pack(0, 0));
+    this.floodedCount = 1 + spread(this.board.storedColorIndexAt(0, 0));
+    return this.floodedCount;
+  }
+
+  // palette index of the color the flood shows
+  int floodColor() {
+    return this.board.storedColorIndexAt(0, 0);
+  }
+
+  // recolors the flood to the given palette color and captures what it
+  // touches of that color, returns the number of cells captured
+  long play(int color) {
+    if (color == floodColor()) {
+      return 0;
+    }
+    this.board.setFloodColor(color);
+    LongList candidates = cellsOfColor(color);
+    long captured = 0;
+    this.scanned += candidates.size();
+    for (int k = 0; k < candidates.size(); k++) {
+      long cell = candidates.get(k);
+      long x = cell >>> 32;
+      long y = cell & 0xFFFFFFFFL;
+      if (!this.board.isFlooded(x, y)) {
+        this.board.flood(x, y);
+        this.work.add(cell);
+        captured++;
+      }
+    }
+    candidates.clear();
+    captured += spread(color);
+    this.floodedCount += captured;
+    return captured;
+  }
+
+  // drains the work list, capturing neighbors of the given color and filing
+  // every other unflooded neighbor under its own color
+  long spread(int color) {
+    long size = this.board.size;
+    long captured = 0;
+    while (this.work.size() > 0) {
+      long cell = this.work.pop();
+      long x = cell >>> 32;
+      long y = cell & 0xFFFFFFFFL;
+      if (x > 0) {
+        captured += visit(x - 1, y, color);
+      }
+      if (y > 0) {
+        captured += visit(x, y - 1, color);
+      }
+      if (x < size - 1) {
+        captured += visit(x + 1, y, color);
+      }
+      if (y < size - 1) {
+        captured += visit(x, y + 1, color);
+      }
+    }
+    return captured;
+  }
+
+  // captures the given neighbor if it has the flood color, otherwise remembers
+  // it as a frontier cell of its own color
+  int visit(long x, long y, int color) {
+    this.scanned++;
+    if (this.board.isFlooded(x, y)) {
+      return 0;
+    }
+    int cellColor = this.board.storedColorIndexAt(x, y);
+    if (cellColor == color) {
+      this.board.flood(x, y);
+      this.work.add(pack(x, y));
+      return 1;
+    }
+    cellsOfColor(cellColor).add(pack(x, y));
+    return 0;
+  }
+
+  // checks if every cell is flooded
+  boolean isWon() {
+    return this.floodedCount == this.board.cellCount();
+  }
+}
@@ -0,0 +1,1263 @@
+package floodit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.awt.Color;
+
+// represents the state of one game of flood-it with nothing drawn: the board,
+// its regions, the moves made so far and the random source that deals boards.
+// FloodIt draws it on screen; bots and tuning runs play it directly
+class FloodEngine {
+  // the largest board whose cell count still fits in an int index
+  int maxBoardSize = 46340;
+
+  int size;
+  int numberOfColors;
+  // the seed of the game, which picks the palette and the seed of every board
+  // dealt after it; the seed of the board on the table deals it again
+  long seed;
+  long boardSeed;
+  SplittableRandom rand;
+  Palette palette = new Palette();
+  PackedBoard board;
+  RegionGraph regions;
+
+  int moveLimit;
+  int movesMade = 0;
+
+  // number of flooded cells, and number of cells showing each palette color;
+  // both follow the region graph, so they are exact right after every move
+  int floodedCount = 0;
+  int[] colorCounts = new int[256];
+
+  // whether a move has been played since the flooded bits were last brought
+  // up to date, so a caller with nothing to do can tell without looking. The
+  // capture of a move is finished at the latest when the next one is played,
+  // so the cells are never more than one move behind
+  boolean cellsBehind = false;
+
+  // whether boards of at most 64 columns, one long per row, are flooded with
+  // bitboards rather than through the frontier lists
+  boolean bitboards = true;
+
+  // the number of cells dealt by one task; larger boards are dealt in pieces
+  // this size across the fork-join pool
+  int dealGrain = 1 << 14;
+
+  // timings of moves and expansions, kept only once someone asks for them
+  FloodMetrics metrics = null;
+
+  // sets the move limit of every board dealt from playouts on it, or null to
+  // allow size * size - size moves on any board
+  MoveLimitCalibrator calibrator = null;
+
+  // the colors played since the board was flooded, oldest first, and the ones
+  // taken back since the last new move, last taken back last
+  ArrayList<MoveRecord> history = new ArrayList<MoveRecord>();
+  ArrayList<MoveRecord> undone = new ArrayList<MoveRecord>();
+
+  // constructor for an engine that has not dealt a game yet
+  FloodEngine() {
+  }
+
+  // constructor for an engine with a board of the given size and number of
+  // colors, dealt from the given seed once makeBoard is called
+  FloodEngine(long seed, int size, int numberOfColors) {
+    configure(seed, size, numberOfColors);
+  }
+
+  // checks the settings of a game and allocates its board
+  void configure(long seed, int size, int numberOfColors) {
+    if (size < 2 || size > maxBoardSize) {
+      throw new IllegalArgumentException(
+          "The size of the board must be between 2 and " + maxBoardSize + ".");
+    }
+    if (numberOfColors < 3 || numberOfColors > 256) {
+      throw new IllegalArgumentException("The number of colors must be between 3 and 256.");
+    }
+    this.seed = seed;
+    this.rand = new SplittableRandom(seed);
+    this.numberOfColors = numberOfColors;
+    this.moveLimit = (size * size) - size;
+    this.movesMade = 0;
+    this.palette.clear();
+    if (this.board == null || this.board.size != size) {
+      this.size = size;
+      this.board = new PackedBoard(size, this.palette);
+    }
+  }
+
+  // starts a fresh game dealt from the given seed
+  void newGame(long seed, int size, int numberOfColors) {
+    configure(seed, size, numberOfColors);
+    makeBoard();
+  }
+
+  // picks the palette, deals the cells and floods the top-left corner
+  void makeBoard() {
+    this.movesMade = 0;
+    chooseColors();
+    deal();
+    startFlood();
+    limitMoves();
+  }
+
+  // deals a new board with the same palette
+  void reset() {
+    this.movesMade = 0;
+    deal();
+    startFlood();
+    limitMoves();
+  }
+
+  // sets the move limit of the board just dealt: calibrated on the board when
+  // there is a calibrator and a playout finished in time, otherwise
+  // size * size - size
+  void limitMoves() {
+    this.moveLimit = (this.size * this.size) - this.size;
+    if (this.calibrator != null) {
+      int limit = this.calibrator.calibrate(this);
+      if (limit > 0) {
+        this.moveLimit = limit;
+      }
+    }
+  }
+
+  // replaces the palette with numberOfColors distinct colors, in random order,
+  // out of the eight named colors or as many of the color table as it takes
+  Palette chooseColors() {
+    this.palette.choose(this.rand, this.numberOfColors);
+    return this.palette;
+  }
+
+  // gives every cell a random color out of the first numberOfColors, from the
+  // next board seed of the game
+  void deal() {
+    deal(this.rand.nextLong());
+  }
+
+  // deals the board of the given seed: every column gets a generator split off
+  // in order from the seed, so the columns can be filled in parallel and still
+  // come out the same on any number of threads
+  void deal(long boardSeed) {
+    this.boardSeed = boardSeed;
+    SplittableRandom root = new SplittableRandom(boardSeed);
+    SplittableRandom[] columns = new SplittableRandom[this.size];
+    for (int x = 0; x < this.size; x++) {
+      columns[x] = root.split();
+    }
+    DealColumns task = new DealColumns(this.board, columns, this.numberOfColors,
+        this.dealGrain, 0, this.size);
+    if (this.board.cellCount() <= this.dealGrain) {
+      task.compute();
+    }
+    else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+    this.board.markAllDirty();
+    this.board.flooded.clear();
+  }
+
+  // floods the top-left cell and its region, and indexes the board's regions
+  void startFlood() {
+    if (this.bitboards && this.board.size <= 64) {
+      this.board.fill = new BitboardFlood(this.board);
+    }
+    else {
+      this.board.fill = this.board.frontier;
+    }
+    this.board.fill.reset();
+    this.cellsBehind = false;
+    this.history.clear();
+    this.undone.clear();
+    this.regions = new RegionGraph(this.board);
+    this.floodedCount = this.regions.floodedCells;
+    Arrays.fill(this.colorCounts, 0);
+    for (int index = 0; index < this.board.cellCount(); index++) {
+      this.colorCounts[this.board.colorIndexAt(index)]++;
+    }
+  }
+
+  // plays the given palette color as one move; returns false when no moves
+  // are left, playing the flood's own color still uses up a move
+  boolean applyMove(int color) {
+    checkColor(color);
+    if (movesLeft() == 0) {
+      return false;
+    }
+    this.undone.clear();
+    this.movesMade++;
+    play(color).counted = true;
+    return true;
+  }
+
+  // recolors the flood to the given palette color and merges the regions of
+  // that color around it, without counting a move
+  void playColor(int color) {
+    checkColor(color);
+    this.undone.clear();
+    play(color);
+  }
+
+  // checks the given color is an index of the palette, before a move changes
+  // anything
+  void checkColor(int color) {
+    if (color < 0 || color >= this.palette.size()) {
+      throw new IllegalArgumentException(
+          "The color must be a palette index between 0 and " + (this.palette.size() - 1) + ".");
+    }
+  }
+
+  // plays the given color and adds it to the history, returns its record
+  MoveRecord play(int color) {
+    int floodColor = this.board.storedColorIndexAt(0);
+    MoveRecord record = new MoveRecord(color, floodColor);
+    this.history.add(record);
+    if (color == floodColor) {
+      return record;
+    }
+    MoveEvent event = new MoveEvent();
+    event.begin();
+    long start = this.metrics == null ? 0 : System.nanoTime();
+    if (this.cellsBehind) {
+      // finish the capture of the last move before the color changes; the
+      // fill only spreads into the flood's current color
+      syncCells();
+    }
+    this.board.fill.record(record);
+    this.colorCounts[floodColor] -= this.floodedCount;
+    this.board.setColorIndex(0, color);
+    int merged = this.regions.applyMove(color, record);
+    this.cellsBehind = true;
+    this.colorCounts[color] += this.floodedCount;
+    this.floodedCount = this.regions.floodedCells;
+    if (this.metrics != null) {
+      this.metrics.moves.record(System.nanoTime() - start);
+    }
+    if (event.shouldCommit()) {
+      event.color = color;
+      event.regionsMerged = merged;
+      event.cellsFlooded = this.floodedCount;
+      event.commit();
+    }
+    return record;
+  }
+
+  // takes back the last color played, touching only the cells it captured;
+  // returns false when there is nothing to take back. Every earlier move's
+  // capture was finished before the next move, so only the last one's can
+  // still be pending
+  boolean undo() {
+    if (this.history.isEmpty()) {
+      return false;
+    }
+    syncCells();
+    MoveRecord record = this.history.remove(this.history.size() - 1);
+    if (record.color != record.previousColor) {
+      this.board.setColorIndex(0, record.previousColor);
+      for (int k = 0; k < record.captured.size(); k++) {
+        this.board.setFlooded(record.captured.get(k), false);
+      }
+      this.board.fill.undo(record);
+      this.regions.undoMove(record);
+      this.colorCounts[record.color] -= this.regions.floodedCells;
+      this.colorCounts[record.previousColor] += this.regions.floodedCells;
+      this.floodedCount = this.regions.floodedCells;
+    }
+    if (record.counted) {
+      this.movesMade--;
+    }
+    this.undone.add(record);
+    return true;
+  }
+
+  // plays again the last color taken back; returns false when there is none,
+  // or when it was a move and no moves are left
+  boolean redo() {
+    if (this.undone.isEmpty()) {
+      return false;
+    }
+    MoveRecord record = this.undone.get(this.undone.size() - 1);
+    if (record.counted && movesLeft() == 0) {
+      return false;
+    }
+    this.undone.remove(this.undone.size() - 1);
+    if (record.counted) {
+      this.movesMade++;
+    }
+    play(record.color).counted = record.counted;
+    return true;
+  }
+
+  // brings the flooded bits of the cells up to date with the last move,
+  // returns the number of cells captured
+  int syncCells() {
+    return syncCells(Long.MAX_VALUE);
+  }
+
+  // brings the flooded bits of the cells closer to the last move, looking at
+  // about budget cells, returns the number of cells captured; cellsBehind
+  // stays set until they have caught up
+  int syncCells(long budget) {
+    FloodExpansionEvent event = new FloodExpansionEvent();
+    event.begin();
+    long start = this.metrics == null ? 0 : System.nanoTime();
+    IFloodFill fill = this.board.fill;
+    long scanned = fill.scanned();
+    int captured = fill.advance(this.board.storedColorIndexAt(0), budget);
+    this.cellsBehind = !fill.isSettled();
+    if (this.metrics != null) {
+      this.metrics.expansions.record(System.nanoTime() - start);
+      this.metrics.cellsScanned += fill.scanned() - scanned;
+      this.metrics.cellsCaptured += captured;
+    }
+    if (event.shouldCommit()) {
+      event.cellsScanned = fill.scanned() - scanned;
+      event.cellsCaptured = captured;
+      event.commit();
+    }
+    return captured;
+  }
+
+  // checks if the whole board is one color
+  boolean isWon() {
+    return this.regions.isOneRegion();
+  }
+
+  // checks if the moves ran out before the board was won
+  boolean isLost() {
+    return !isWon() && movesLeft() == 0;
+  }
+
+  // the Zobrist hash of the position: which cells are flooded and the flood's
+  // color. Kept up to date by the region graph, so it costs nothing to read
+  long hash() {
+    return this.regions.key[this.regions.floodRoot] ^ this.board.keys.colorKey(floodColor());
+  }
+
+  // number of moves still allowed
+  int movesLeft() {
+    return this.moveLimit - this.movesMade;
+  }
+
+  // palette index of the color the flood shows
+  int floodColor() {
+    return this.board.storedColorIndexAt(0);
+  }
+}
+
+// represents the dealing of a range of columns, split in halves across the
+// fork-join pool until the pieces are small enough to deal in one go
+class DealColumns extends RecursiveAction {
+  PackedBoard board;
+  SplittableRandom[] columns;
+  int numberOfColors;
+  int grain;
+  int from;
+  int to;
+
+  DealColumns(PackedBoard board, SplittableRandom[] columns, int numberOfColors, int grain,
+      int from, int to) {
+    this.board = board;
+    this.columns = columns;
+    this.numberOfColors = numberOfColors;
+    this.grain = grain;
+    this.from = from;
+    this.to = to;
+  }
+
+  // deals columns from until to, each from its own generator
+  protected void compute() {
+    int size = this.board.size;
+    if ((long) (this.to - this.from) * size > this.grain && this.to - this.from > 1) {
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new DealColumns(this.board, this.columns, this.numberOfColors, this.grain,
+          this.from, middle),
+          new DealColumns(this.board, this.columns, this.numberOfColors, this.grain, middle,
+              this.to));
+      return;
+    }
+    byte[] colors = this.board.colors;
+    for (int x = this.from; x < this.to; x++) {
+      SplittableRandom rand = this.columns[x];
+      for (int index = x * size; index < (x + 1) * size; index++) {
+        colors[index] = (byte) rand.nextInt(this.numberOfColors);
+      }
+    }
+  }
+}
+
+// represents what one color played changed, enough to take it back: the
+// flood's color before it, the cells it captured, and the state of the region
+// graph and the flood fill it replaced. Nothing is copied whole, so a move
+// costs memory in proportion to what it changed
+class MoveRecord {
+  int color;
+  int previousColor;
+  // whether it was counted as a move rather than played freely
+  boolean counted = false;
+  // the cells flooded by the move, in the order they were captured
+  IntList captured = new IntList();
+  // the regions merged into the flood, and the flood's neighbors before
+  IntList absorbed = new IntList();
+  IntList previousNeighbors;
+  // the furthest column the flood reached before
+  int previousReach;
+  // how many frontier cells each color had before, and the frontier cells of
+  // the color played, which the move used up
+  int[] frontierSizes;
+  IntList seeds;
+
+  MoveRecord(int color, int previousColor) {
+    this.color = color;
+    this.previousColor = previousColor;
+  }
+}
+
+// represents the storage behind a square board: one color index per cell in a
+// flat byte array and one flooded bit per cell, laid out column after column
+class PackedBoard {
+  int size;
+  byte[] colors;
+  BitSet flooded;
+  Palette palette;
+  FloodFrontier frontier;
+  // what grows the flooded cells, the frontier unless the engine picks another
+  IFloodFill fill;
+  ZobristKeys keys = new ZobristKeys(0x5DEECE66DL);
+
+  // columns whose look changed since they were last drawn
+  BitSet dirtyColumns = new BitSet();
+
+  // constructor for a board whose color indices refer to the given palette
+  PackedBoard(int size, Palette palette) {
+    this.size = size;
+    this.colors = new byte[size * size];
+    this.flooded = new BitSet(size * size);
+    this.palette = palette;
+    this.frontier = new FloodFrontier(this);
+    this.fill = this.frontier;
+  }
+
+  // index of the cell in column x, row y
+  int index(int x, int y) {
+    return x * this.size + y;
+  }
+
+  // number of cells on the board
+  int cellCount() {
+    return this.colors.length;
+  }
+
+  // checks if (x, y) lies on the board
+  boolean isInside(int x, int y) {
+    return x >= 0 && y >= 0 && x < this.size && y < this.size;
+  }
+
+  // palette index of the color at the given cell; flooded cells all show the
+  // color of the top-left cell, so recoloring the region never touches them
+  int colorIndexAt(int index) {
+    if (index != 0 && this.flooded.get(index)) {
+      return this.colors[0] & 0xFF;
+    }
+    return this.colors[index] & 0xFF;
+  }
+
+  // palette index the given cell had when it was last dealt or captured
+  int storedColorIndexAt(int index) {
+    return this.colors[index] & 0xFF;
+  }
+
+  // sets the palette index of the color at the given cell; the top-left cell
+  // carries the color of the whole flood, so changing it dirties every column
+  // the flood reaches
+  void setColorIndex(int index, int colorIndex) {
+    this.colors[index] = (byte) colorIndex;
+    if (index == 0) {
+      this.dirtyColumns.set(0, this.fill.reach() + 1);
+    }
+    else {
+      this.dirtyColumns.set(index / this.size);
+    }
+  }
+
+  // color at the given cell
+  Color colorAt(int index) {
+    return this.palette.get(colorIndexAt(index));
+  }
+
+  // palette index of the given color, adding it to the palette if it is new
+  int paletteIndex(Color color) {
+    int colorIndex = this.palette.indexOf(color);
+    if (colorIndex < 0) {
+      colorIndex = this.palette.add(color);
+    }
+    return colorIndex;
+  }
+
+  // sets the color at the given cell, adding it to the palette if it is new
+  void setColor(int index, Color color) {
+    setColorIndex(index, paletteIndex(color));
+  }
+
+  // checks if the given cell is flooded
+  boolean isFlooded(int index) {
+    return this.flooded.get(index);
+  }
+
+  // marks the given cell as flooded or not
+  void setFlooded(int index, boolean flooded) {
+    this.flooded.set(index, flooded);
+    this.dirtyColumns.set(index / this.size);
+  }
+
+  // marks every column as changed
+  void markAllDirty() {
+    this.dirtyColumns.set(0, this.size);
+  }
+
+  // checks if any of the four neighbors of the given cell is flooded
+  boolean isAdjacentToFlooded(int index) {
+    int x = index / this.size;
+    int y = index % this.size;
+    return (x > 0 && this.flooded.get(index - this.size))
+        || (y > 0 && this.flooded.get(index - 1))
+        || (x < this.size - 1 && this.flooded.get(index + this.size))
+        || (y < this.size - 1 && this.flooded.get(index + 1));
+  }
+
+  // checks if every cell is flooded
+  boolean isAllFlooded() {
+    return this.flooded.nextClearBit(0) >= cellCount();
+  }
+}
+
+
+// represents a way of growing the flooded cells of a board as moves are made
+interface IFloodFill {
+  // floods the top-left cell and everything connected to it in its color,
+  // returns the number of flooded cells
+  int reset();
+
+  // grows the flooded cells into every cell of the given color they touch and
+  // whatever of that color those connect to, returns the number captured
+  int expand(int color);
+
+  // carries the expansion into the given color on by looking at about budget
+  // cells, returns the number captured; a fill that cannot stop part way does
+  // the whole expansion
+  int advance(int color, long budget);
+
+  // checks if the last expansion has been carried all the way
+  boolean isSettled();
+
+  // notes in the given record what the expansions from now on change; the
+  // fill must be settled
+  void record(MoveRecord record);
+
+  // puts back what the expansion of the given record changed, other than the
+  // flooded bits of the board; it must be the last one recorded
+  void undo(MoveRecord record);
+
+  // the furthest column the flooded cells reach
+  int reach();
+
+  // cells looked at by every expansion so far
+  long scanned();
+}
+
+// represents the boundary of the flooded region: for every color, the cells
+// just outside the region that have it, so a flood only looks where it can grow.
+// An expansion runs as a wave in breadth-first layers: first the frontier
+// cells of the new color, then their neighbors in the order they were taken,
+// so it can stop after any cell and carry on where it left off
+class FloodFrontier implements IFloodFill {
+  PackedBoard board;
+  ArrayList<IntList> byColor = new ArrayList<IntList>();
+  // cells taken whose neighbors are still to be looked at, from workHead on
+  IntList work = new IntList();
+  int workHead = 0;
+  // the color the unfinished wave spreads, or -1 once it has settled, and the
+  // next of its frontier cells to take
+  int waveColor = -1;
+  int nextSeed = 0;
+  // the furthest column the flooded region reaches
+  int reach = 0;
+  // cells looked at by every expansion so far
+  long scanned = 0;
+  // the record of the move being expanded, or null
+  MoveRecord recording = null;
+
+  FloodFrontier(PackedBoard board) {
+    this.board = board;
+  }
+
+  // the furthest column the flooded region reaches
+  public int reach() {
+    return this.reach;
+  }
+
+  // cells looked at by every expansion so far
+  public long scanned() {
+    return this.scanned;
+  }
+
+  // checks if the last wave has spread all the way
+  public boolean isSettled() {
+    return this.waveColor < 0;
+  }
+
+  // the frontier cells of the given color
+  IntList cellsOfColor(int color) {
+    while (this.byColor.size() <= color) {
+      this.byColor.add(new IntList());
+    }
+    return this.byColor.get(color);
+  }
+
+  // floods the top-left cell and everything connected to it in its color,
+  // returns the number of flooded cells
+  public int reset() {
+    for (IntList cells : this.byColor) {
+      cells.clear();
+    }
+    this.work.clear();
+    this.workHead = 0;
+    this.waveColor = -1;
+    this.recording = null;
+    this.board.flooded.clear();
+    this.board.flooded.set(0);
+    this.board.markAllDirty();
+    this.reach = 0;
+    this.work.add(0);
+    return 1 + expand(this.board.storedColorIndexAt(0));
+  }
+
+  // grows the flooded region into every frontier cell of the given color and
+  // whatever of that color they connect to, returns the number of cells captured
+  public int expand(int color) {
+    return advance(color, Long.MAX_VALUE);
+  }
+
+  // spreads the wave into the given color until about budget more cells have
+  // been looked at or it settles, returns the number of cells captured. A wave
+  // of another color still under way is finished first
+  public int advance(int color, long budget) {
+    int captured = 0;
+    if (this.waveColor != color) {
+      if (this.waveColor >= 0) {
+        captured += advance(this.waveColor, Long.MAX_VALUE);
+      }
+      this.waveColor = color;
+      this.nextSeed = 0;
+    }
+    long limit = budget > Long.MAX_VALUE - this.scanned ? Long.MAX_VALUE : this.scanned + budget;
+    IntList seeds = cellsOfColor(color);
+    while (this.nextSeed < seeds.size() && this.scanned < limit) {
+      int index = seeds.get(this.nextSeed);
+      this.nextSeed++;
+      this.scanned++;
+      if (!this.board.flooded.get(index)) {
+        capture(index);
+        this.reach = Math.max(this.reach, index / this.board.size);
+        captured++;
+      }
+    }
+    if (this.nextSeed < seeds.size()) {
+      return captured;
+    }
+    captured += spread(color, limit);
+    if (this.workHead == this.work.size()) {
+      if (this.recording != null && this.recording.seeds == null) {
+        // the record keeps the used-up cells, and the color starts afresh
+        this.recording.seeds = seeds;
+        this.byColor.set(color, new IntList());
+      }
+      else {
+        seeds.clear();
+      }
+      this.work.clear();
+      this.workHead = 0;
+      this.waveColor = -1;
+    }
+    return captured;
+  }
+
+  // takes cells off the work list in order until it is empty or limit cells
+  // have been looked at in all, capturing neighbors of the given color and
+  // filing every other unflooded neighbor under its own color
+  int spread(int color, long limit) {
+    int size = this.board.size;
+    int captured = 0;
+    while (this.workHead < this.work.size() && this.scanned < limit) {
+      int index = this.work.get(this.workHead);
+      this.workHead++;
+      int x = index / size;
+      int y = index % size;
+      if (x > 0) {
+        captured += visit(index - size, color);
+      }
+      if (y > 0) {
+        captured += visit(index - 1, color);
+      }
+      if (x < size - 1 && visit(index + size, color) > 0) {
+        this.reach = Math.max(this.reach, x + 1);
+        captured++;
+      }
+      if (y < size - 1) {
+        captured += visit(index + 1, color);
+      }
+    }
+    return captured;
+  }
+
+  // captures the given neighbor if it has the flood color, otherwise remembers
+  // it as a frontier cell of its own color
+  int visit(int index, int color) {
+    this.scanned++;
+    if (this.board.flooded.get(index)) {
+      return 0;
+    }
+    int cellColor = this.board.storedColorIndexAt(index);
+    if (cellColor == color) {
+      capture(index);
+      return 1;
+    }
+    cellsOfColor(cellColor).add(index);
+    return 0;
+  }
+
+  // floods the given cell and queues its neighbors to be looked at
+  void capture(int index) {
+    this.board.flooded.set(index);
+    this.work.add(index);
+    if (this.recording != null) {
+      this.recording.captured.add(index);
+    }
+  }
+
+  // notes the size of every frontier list, which the next move only adds to
+  // but for the list of its own color
+  public void record(MoveRecord record) {
+    record.previousReach = this.reach;
+    record.frontierSizes = new int[this.byColor.size()];
+    for (int c = 0; c < this.byColor.size(); c++) {
+      record.frontierSizes[c] = this.byColor.get(c).size();
+    }
+    this.recording = record;
+  }
+
+  // cuts every frontier list back to its size before the move and gives the
+  // color played its used-up cells back
+  public void undo(MoveRecord record) {
+    for (int c = 0; c < this.byColor.size(); c++) {
+      IntList cells = this.byColor.get(c);
+      cells.size = c < record.frontierSizes.length
+          ? Math.min(cells.size, record.frontierSizes[c]) : 0;
+    }
+    if (record.seeds != null) {
+      this.byColor.set(record.color, record.seeds);
+    }
+    this.reach = record.previousReach;
+    this.recording = null;
+  }
+}
+
+// represents the flooded cells and the cells of every color as bitboards, one
+// long per row with bit x for column x, on boards of at most 64 columns. A
+// move grows the flooded rows by shifting them one cell each way, and up and
+// down a row, masked to the cells they may take, until nothing changes: 64
+// cells per operation instead of one cell at a time
+class BitboardFlood implements IFloodFill {
+  PackedBoard board;
+  int size;
+  // rowsOfColor[c][y] has bit x set when the cell in column x, row y, was
+  // dealt color c
+  long[][] rowsOfColor;
+  long[] flooded;
+  // bits of the columns on the board
+  long columns;
+  int reach = 0;
+  long scanned = 0;
+  // the record of the move being expanded, or null
+  MoveRecord recording = null;
+
+  BitboardFlood(PackedBoard board) {
+    if (board.size > 64) {
+      throw new IllegalArgumentException("Bitboards hold boards of at most 64 columns.");
+    }
+    this.board = board;
+    this.size = board.size;
+    this.flooded = new long[this.size];
+    this.columns = this.size == 64 ? -1L : (1L << this.size) - 1;
+  }
+
+  // sorts the cells into rows by color, then floods the top-left cell's region
+  public int reset() {
+    this.rowsOfColor = new long[this.board.palette.size()][this.size];
+    for (int index = 0; index < this.board.cellCount(); index++) {
+      this.rowsOfColor[this.board.storedColorIndexAt(index)][index % this.size] |=
+          1L << (index / this.size);
+    }
+    Arrays.fill(this.flooded, 0);
+    this.flooded[0] = 1L;
+    this.board.flooded.clear();
+    this.board.flooded.set(0);
+    this.board.markAllDirty();
+    this.reach = 0;
+    return 1 + expand(this.board.storedColorIndexAt(0));
+  }
+
+  // grows the flooded rows into the given color until they stop changing, then
+  // copies the cells captured onto the board
+  public int expand(int color) {
+    if (color >= this.rowsOfColor.length) {
+      return 0;
+    }
+    long[] allowed = this.rowsOfColor[color];
+    long[] rows = this.flooded;
+    long[] before = rows.clone();
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      // a sweep down and a sweep back up carry the flood the whole height of
+      // the board each time, and one column further each way per row
+      for (int y = 0; y < this.size; y++) {
+        changed |= grow(rows, allowed, y);
+      }
+      for (int y = this.size - 1; y >= 0; y--) {
+        changed |= grow(rows, allowed, y);
+      }
+    }
+    int captured = 0;
+    long reached = 0;
+    for (int y = 0; y < this.size; y++) {
+      long taken = rows[y] & ~before[y];
+      reached |= rows[y];
+      while (taken != 0) {
+        int x = Long.numberOfTrailingZeros(taken);
+        taken &= taken - 1;
+        this.board.flooded.set(x * this.size + y);
+        if (this.recording != null) {
+          this.recording.captured.add(x * this.size + y);
+        }
+        captured++;
+      }
+    }
+    this.reach = 63 - Long.numberOfLeadingZeros(reached);
+    return captured;
+  }
+
+  // grows row y of the flood by one cell sideways and from the rows next to it
+  // into the allowed cells, returns whether it changed
+  boolean grow(long[] rows, long[] allowed, int y) {
+    this.scanned += this.size;
+    long row = rows[y];
+    long reach = row | (row << 1) | (row >>> 1);
+    if (y > 0) {
+      reach |= rows[y - 1];
+    }
+    if (y < this.size - 1) {
+      reach |= rows[y + 1];
+    }
+    long grown = row | (reach & allowed[y] & this.columns);
+    if (grown == row) {
+      return false;
+    }
+    rows[y] = grown;
+    return true;
+  }
+
+  // the whole expansion: sweeps over at most 64 rows are already short
+  public int advance(int color, long budget) {
+    return expand(color);
+  }
+
+  // checks if the last expansion is done, which it always is
+  public boolean isSettled() {
+    return true;
+  }
+
+  // notes how far the flood reaches
+  public void record(MoveRecord record) {
+    record.previousReach = this.reach;
+    this.recording = record;
+  }
+
+  // clears the bits of the cells the move captured
+  public void undo(MoveRecord record) {
+    for (int k = 0; k < record.captured.size(); k++) {
+      int index = record.captured.get(k);
+      this.flooded[index % this.size] &= ~(1L << (index / this.size));
+    }
+    this.reach = record.previousReach;
+    this.recording = null;
+  }
+
+  // the furthest column the flooded cells reach
+  public int reach() {
+    return this.reach;
+  }
+
+  // cells looked at by every expansion so far
+  public long scanned() {
+    return this.scanned;
+  }
+}
+
+// represents a growable list of ints, used as a stack of cell indices
+class IntList {
+  int[] items = new int[16];
+  int size = 0;
+
+  // number of items in the list
+  int size() {
+    return this.size;
+  }
+
+  // the item at position i
+  int get(int i) {
+    return this.items[i];
+  }
+
+  // adds an item at the end
+  void add(int item) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.size * 2);
+    }
+    this.items[this.size] = item;
+    this.size++;
+  }
+
+  // removes and returns the last item
+  int pop() {
+    this.size--;
+    return this.items[this.size];
+  }
+
+  // empties the list, keeping its capacity
+  void clear() {
+    this.size = 0;
+  }
+}
+
+// represents a growable list of longs
+class LongList {
+  long[] items = new long[16];
+  int size = 0;
+
+  // number of items in the list
+  int size() {
+    return this.size;
+  }
+
+  // the item at position i
+  long get(int i) {
+    return this.items[i];
+  }
+
+  // adds an item at the end
+  void add(long item) {
+    if (this.size == this.items.length) {
+      this.items = Arrays.copyOf(this.items, this.size * 2);
+    }
+    this.items[this.size] = item;
+    this.size++;
+  }
+
+  // removes and returns the last item
+  long pop() {
+    this.size--;
+    return this.items[this.size];
+  }
+
+  // empties the list, keeping its capacity
+  void clear() {
+    this.size = 0;
+  }
+}
+
+// represents the board as a graph of regions: every maximal group of touching
+// same-colored cells is one node, joined to the regions it borders. Moves merge
+// nodes into the flooded region with union-find instead of touching cells
+class RegionGraph {
+  int regionCount;
+  int[] regionOf;
+  int[] parent;
+  int[] color;
+  int[] cellCount;
+  // the XOR of the Zobrist keys of the cells of every region; merging regions
+  // XORs their keys together, so the flood's key is the hash of its cells
+  long[] key;
+  // neighbors of region r are adjEdges[adjStart[r]] until adjEdges[adjEnd[r] - 1]
+  int[] adjStart;
+  int[] adjEnd;
+  int[] adjEdges;
+  int[] mark;
+  int stamp = 0;
+
+  int floodRoot;
+  int floodedCells;
+  int regionsLeft;
+  IntList floodNeighbors = new IntList();
+
+  // builds the region graph of the given board
+  RegionGraph(PackedBoard board) {
+    labelRegions(board);
+    linkRegions(board);
+    this.floodRoot = this.regionOf[0];
+    this.floodedCells = this.cellCount[this.floodRoot];
+    this.regionsLeft = this.regionCount;
+    for (int k = this.adjStart[this.floodRoot]; k < this.adjEnd[this.floodRoot]; k++) {
+      this.floodNeighbors.add(this.adjEdges[k]);
+    }
+  }
+
+  // constructor for a copy of the given graph as it stands now, which moves on
+  // either one leave the other alone; the arrays no move changes are shared
+  RegionGraph(RegionGraph other) {
+    this.regionCount = other.regionCount;
+    this.regionOf = other.regionOf;
+    this.parent = other.parent.clone();
+    this.color = other.color.clone();
+    this.cellCount = other.cellCount;
+    this.key = other.key.clone();
+    this.adjStart = other.adjStart;
+    this.adjEnd = other.adjEnd;
+    this.adjEdges = other.adjEdges;
+    this.mark = new int[this.regionCount];
+    this.floodRoot = other.floodRoot;
+    this.floodedCells = other.floodedCells;
+    this.regionsLeft = other.regionsLeft;
+    // moves replace the neighbor list rather than change it
+    this.floodNeighbors = other.floodNeighbors;
+  }
+
+  // gives every cell the id of its region, numbering regions in cell order
+  void labelRegions(PackedBoard board) {
+    int n = board.cellCount();
+    int size = board.size;
+    this.regionOf = new int[n];
+    Arrays.fill(this.regionOf, -1);
+    IntList regionColors = new IntList();
+    IntList regionSizes = new IntList();
+    IntList work = new IntList();
+    LongList regionKeys = new LongList();
+    for (int start = 0; start < n; start++) {
+      if (this.regionOf[start] >= 0) {
+        continue;
+      }
+      int id = regionColors.size();
+      int c = board.colorIndexAt(start);
+      int cells = 0;
+      long key = 0;
+      this.regionOf[start] = id;
+      work.add(start);
+      while (work.size() > 0) {
+        int index = work.pop();
+        cells++;
+        key ^= board.keys.cellKey(index);
+        int x = index / size;
+        int y = index % size;
+        if (x > 0) {
+          claim(board, work, index - size, id, c);
+        }
+        if (y > 0) {
+          claim(board, work, index - 1, id, c);
+        }
+        if (x < size - 1) {
+          claim(board, work, index + size, id, c);
+        }
+        if (y < size - 1) {
+          claim(board, work, index + 1, id, c);
+        }
+      }
+      regionColors.add(c);
+      regionSizes.add(cells);
+      regionKeys.add(key);
+    }
+    this.regionCount = regionColors.size();
+    this.color = Arrays.copyOf(regionColors.items, this.regionCount);
+    this.cellCount = Arrays.copyOf(regionSizes.items, this.regionCount);
+    this.key = Arrays.copyOf(regionKeys.items, this.regionCount);
+    this.parent = new int[this.regionCount];
+    for (int r = 0; r < this.regionCount; r++) {
+      this.parent[r] = r;
+    }
+    this.mark = new int[this.regionCount];
+  }
+
+  // adds the given cell to region id if it is unlabeled and of color c
+  void claim(PackedBoard board, IntList work, int index, int id, int c) {
+    if (this.regionOf[index] < 0 && board.colorIndexAt(index) == c) {
+      this.regionOf[index] = id;
+      work.add(index);
+    }
+  }
+
+  // collects the distinct neighbors of every region into flat edge arrays
+  void linkRegions(PackedBoard board) {
+    this.adjStart = new int[this.regionCount];
+    this.adjEnd = new int[this.regionCount];
+    this.adjEdges = null;
+    // the first pass only counts the neighbors of every region in adjEnd
+    walkBorders(board.size);
+    int total = 0;
+    for (int r = 0; r < this.regionCount; r++) {
+      int degree = this.adjEnd[r];
+      this.adjStart[r] = total;
+      this.adjEnd[r] = total;
+      total += degree;
+    }
+    this.adjEdges = new int[total];
+    walkBorders(board.size);
+    // drop the pairs that still came up twice, marking each neighbor with the
+    // region it was last seen from
+    for (int r = 0; r < this.regionCount; r++) {
+      int kept = this.adjStart[r];
+      for (int k = this.adjStart[r]; k < this.adjEnd[r]; k++) {
+        int neighbor = this.adjEdges[k];
+        if (this.mark[neighbor] != r + 1) {
+          this.mark[neighbor] = r + 1;
+          this.adjEdges[kept] = neighbor;
+          kept++;
+        }
+      }
+      this.adjEnd[r] = kept;
+    }
+    Arrays.fill(this.mark, 0);
+  }
+
+  // visits every pair of touching regions; a border repeats the same pair cell
+  // after cell, so a pair is only passed on when the cells just before did not
+  // already give it
+  void walkBorders(int size) {
+    int n = this.regionOf.length;
+    for (int index = 0; index < n; index++) {
+      int a = this.regionOf[index];
+      int x = index / size;
+      int y = index % size;
+      if (y < size - 1) {
+        int b = this.regionOf[index + 1];
+        if (a != b && (x == 0 || this.regionOf[index - size] != a
+            || this.regionOf[index - size + 1] != b)) {
+          link(a, b);
+        }
+      }
+      if (x < size - 1) {
+        int b = this.regionOf[index + size];
+        if (a != b && (y == 0 || this.regionOf[index - 1] != a
+            || this.regionOf[index - 1 + size] != b)) {
+          link(a, b);
+        }
+      }
+    }
+  }
+
+  // counts or records a and b as neighbors of each other
+  void link(int a, int b) {
+    if (this.adjEdges != null) {
+      this.adjEdges[this.adjEnd[a]] = b;
+      this.adjEdges[this.adjEnd[b]] = a;
+    }
+    this.adjEnd[a]++;
+    this.adjEnd[b]++;
+  }
+
+  // the region that r has been merged into
+  int find(int r) {
+    int root = r;
+    while (this.parent[root] != root) {
+      root = this.parent[root];
+    }
+    while (this.parent[r] != root) {
+      int next = this.parent[r];
+      this.parent[r] = root;
+      r = next;
+    }
+    return root;
+  }
+
+  // the color of the flooded region
+  int floodColor() {
+    return this.color[this.floodRoot];
+  }
+
+  // checks if the region of the given cell has been flooded
+  boolean isFlooded(int index) {
+    return find(this.regionOf[index]) == this.floodRoot;
+  }
+
+  // recolors the flooded region to c and merges every neighboring region of
+  // that color into it, returns the number of regions merged
+  int applyMove(int c) {
+    return applyMove(c, new MoveRecord(c, this.color[this.floodRoot]));
+  }
+
+  // applies the move, noting in the given record what it merged
+  int applyMove(int c, MoveRecord record) {
+    if (c == this.color[this.floodRoot]) {
+      return 0;
+    }
+    this.stamp++;
+    this.mark[this.floodRoot] = this.stamp;
+    IntList next = new IntList();
+    IntList absorbed = record.absorbed;
+    record.previousNeighbors = this.floodNeighbors;
+    for (int k = 0; k < this.floodNeighbors.size(); k++) {
+      int r = find(this.floodNeighbors.get(k));
+      if (this.mark[r] == this.stamp) {
+        continue;
+      }
+      this.mark[r] = this.stamp;
+      if (this.color[r] == c) {
+        this.parent[r] = this.floodRoot;
+        this.floodedCells += this.cellCount[r];
+        this.key[this.floodRoot] ^= this.key[r];
+        absorbed.add(r);
+      }
+      else {
+        next.add(r);
+      }
+    }
+    for (int k = 0; k < absorbed.size(); k++) {
+      int r = absorbed.get(k);
+      for (int e = this.adjStart[r]; e < this.adjEnd[r]; e++) {
+        int neighbor = find(this.adjEdges[e]);
+        if (this.mark[neighbor] != this.stamp) {
+          this.mark[neighbor] = this.stamp;
+          next.add(neighbor);
+        }
+      }
+    }
+    this.color[this.floodRoot] = c;
+    this.floodNeighbors = next;
+    this.regionsLeft -= absorbed.size();
+    return absorbed.size();
+  }
+
+  // splits off again the regions the given move merged and gives the flood its
+  // old color and neighbors; merged regions all hang straight off the flood's
+  // root, so cutting them loose undoes the merge exactly
+  void undoMove(MoveRecord record) {
+    IntList absorbed = record.absorbed;
+    for (int k = 0; k < absorbed.size(); k++) {
+      int r = absorbed.get(k);
+      this.parent[r] = r;
+      this.floodedCells -= this.cellCount[r];
+      this.key[this.floodRoot] ^= this.key[r];
+    }
+    this.color[this.floodRoot] = record.previousColor;
+    this.floodNeighbors = record.previousNeighbors;
+    this.regionsLeft += absorbed.size();
+  }
+
+  // checks if a single region covers the board
+  boolean isOneRegion() {
+    return this.regionsLeft == 1;
+  }
+}
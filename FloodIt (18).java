@@ -1,6 +1,18 @@
+package floodit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.BitSet;
+import java.util.SplittableRandom;
 
 import tester.Tester;
 import javalib.impworld.*;
@@ -23,59 +35,70 @@ interface ICell {
   boolean isFlooded();
 }
 
-// Represents a single square of the game area
+// Represents a single square of the game area, as a view onto the packed board
+// storage: the cell itself only knows where it is, the board knows its state
 class Cell implements ICell {
   // In logical coordinates, with the origin at the top-left corner of the screen
   int x;
   int y;
-  Color color;
-  String colorName;
-  String value;
-  boolean flooded;
-  WorldImage cellImage;
-  Utils util = new Utils();
-
-  // the four adjacent cells to this one
-  ICell left;
-  ICell top;
-  ICell right;
-  ICell bottom;
-
-  // constructor for a cell
-  void init() {
-    this.flooded = false;
-    this.left = new MtCell();
-    this.top = new MtCell();
-    this.right = new MtCell();
-    this.bottom = new MtCell();
-  }
+  PackedBoard board;
+  int index;
 
-  // constructor for cell
+  // constructor for a detached cell that owns a one-cell board of its own
   Cell(int x, int y, Color color) {
-    init();
+    Palette palette = new Palette();
+    palette.add(color);
     this.x = x;
     this.y = y;
-    this.color = color;
-    this.colorName = util.getColor(color);
-    this.value = "(" + x + "," + y + ")";
+    this.board = new PackedBoard(1, palette);
+    this.index = 0;
   }
 
-  // constructor for cell
-  Cell(int x, int y, Color color, Cell left, Cell top, Cell right, Cell bottom) {
-    init();
+  // constructor for a view onto the cell at (x, y) of the given board
+  Cell(PackedBoard board, int x, int y) {
     this.x = x;
     this.y = y;
-    this.color = color;
-    this.colorName = util.getColor(color);
-    this.left = left;
-    this.top = top;
-    this.right = right;
-    this.bottom = bottom;
+    this.board = board;
+    this.index = board.index(x, y);
+  }
+
+  // gets the color of this cell
+  Color getColor() {
+    return this.board.colorAt(this.index);
+  }
+
+  // palette index of the color of this cell
+  int colorIndex() {
+    return this.board.colorIndexAt(this.index);
+  }
+
+  // packed RGB value of the color of this cell
+  int rgb() {
+    return this.board.palette.rgb(colorIndex());
+  }
+
+  // checks if this cell shows the same color as the given one: an int compare
+  // on the same board, or of RGB values across boards
+  boolean sameColor(Cell other) {
+    if (this.board == other.board) {
+      return colorIndex() == other.colorIndex();
+    }
+    return rgb() == other.rgb();
+  }
+
+  // sets the color of this cell
+  void setColor(Color color) {
+    this.board.setColor(this.index, color);
   }
 
   // checks if cell is flooded
   public boolean isFlooded() {
-    return flooded;
+    return this.board.isFlooded(this.index);
+  }
+
+  // marks this cell as flooded or not
+  void setFlooded(boolean flooded) {
+    this.board.setFlooded(this.index, flooded);
   }
 
   // checks if cell is empty
@@ -83,17 +106,119 @@ class Cell implements ICell {
     return false;
   }
 
+  // the four adjacent cells to this one, or an empty cell past the edge
+  ICell left() {
+    return this.neighbor(this.x - 1, this.y);
+  }
+
+  ICell top() {
+    return this.neighbor(this.x, this.y - 1);
+  }
+
+  ICell right() {
+    return this.neighbor(this.x + 1, this.y);
+  }
+
+  ICell bottom() {
+    return this.neighbor(this.x, this.y + 1);
+  }
+
+  // a view onto the cell at (x, y) of the same board, or an empty cell past
+  // the edge
+  ICell neighbor(int x, int y) {
+    if (this.board.isInside(x, y)) {
+      return new Cell(this.board, x, y);
+    }
+    else {
+      return new MtCell(x, y);
+    }
+  }
+
   // gets the cell info
   public String getCellInfo() {
-    return new String("Cell[" + value + " " + colorName + "]");
+    return "Cell[(" + x + "," + y + ") " + this.board.palette.name(colorIndex()) + "]";
   }
 
   // creating image
   public WorldImage cellImage(int cellSize) {
+    return new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, this.getColor());
+  }
+}
 
-    WorldImage i = new RectangleImage(cellSize, cellSize, OutlineMode.SOLID, this.color);
-    this.cellImage = i;
-    return i;
+// represents a renderer that paints the board straight into the one image it
+// hands to the scene, one rectangle fill per run of same-colored cells in a
+// column rather than a call per pixel. Boards with more cells than pixels
+// are sampled, one cell per pixel
+class RasterBoardRenderer {
+  PackedBoard board;
+  // pixels per side of the drawn board
+  int width;
+  // the image handed to the scene, the only copy of the pixels
+  ComputedPixelImage view;
+  // cost of the last paint, kept apart from the game logic
+  long lastPaintNanos = 0;
+  int lastPaintedCells = 0;
+
+  // constructor for a renderer drawing cells of at most cellSize pixels on a
+  // board of at most maxPixels per side
+  RasterBoardRenderer(PackedBoard board, int cellSize, int maxPixels) {
+    this.board = board;
+    int cellPixels = Math.max(1, Math.min(cellSize, maxPixels / board.size));
+    this.width = Math.min(board.size * cellPixels, maxPixels);
+    this.view = new ComputedPixelImage(this.width, this.width);
+    board.markAllDirty();
+  }
+
+  // first pixel of the given cell column or row
+  int pixelStart(int cell) {
+    return (int) (((long) cell * this.width + this.board.size - 1) / this.board.size);
+  }
+
+  // cell column or row shown at the given pixel
+  int cellAtPixel(int pixel) {
+    return (int) ((long) pixel * this.board.size / this.width);
+  }
+
+  // paints the columns that changed since the last paint, returns the image
+  WorldImage render() {
+    long start = System.nanoTime();
+    int painted = 0;
+    BitSet dirty = this.board.dirtyColumns;
+    for (int x = dirty.nextSetBit(0); x >= 0 && x < this.board.size; x = dirty
+        .nextSetBit(x + 1)) {
+      painted += paintColumn(x);
+    }
+    dirty.clear();
+    this.lastPaintNanos = System.nanoTime() - start;
+    this.lastPaintedCells = painted;
+    return this.view;
+  }
+
+  // paints one column of cells run by run, returns the number of cells painted
+  int paintColumn(int x) {
+    int left = pixelStart(x);
+    int right = pixelStart(x + 1);
+    if (left == right) {
+      return 0;
+    }
+    int size = this.board.size;
+    int base = this.board.index(x, 0);
+    int y = 0;
+    while (y < size) {
+      int color = this.board.colorIndexAt(base + y);
+      int end = y + 1;
+      while (end < size && this.board.colorIndexAt(base + end) == color) {
+        end++;
+      }
+      fill(left, right, pixelStart(y), pixelStart(end), this.board.palette.get(color));
+      y = end;
+    }
+    return size;
+  }
+
+  // fills the given pixel rectangle of the scene image in one call
+  void fill(int left, int right, int top, int bottom, Color color) {
+    this.view.setPixels(left, top, right - left, bottom - top, color);
   }
 }
 
@@ -159,54 +284,88 @@ class FloodIt extends World {
   WorldScene scene;
   boolean theGameIsOver = false;
 
-  // a two-dimensional grid of these Cells to represent the board
-  ArrayList<ArrayList<Cell>> board;
-  ArrayList<Color> colorList;
+  // the game being shown; this world only draws it and feeds it input
+  FloodEngine engine;
+  // the engine's board and palette, which stay the same objects for the whole
+  // life of this world
+  PackedBoard board;
+  Palette colorList;
   int boardSize;
   int numberOfColors;
-  Random rand;
-  int totalTries;
-  int userTries = 0;
   int timer = 0;
 
+  // the drawn columns of the board, kept as a balanced tree of side-by-side
+  // images: leaves start at boardTreeLeaves, node k sits beside node k + 1
+  // under node k / 2, so redrawing a column only recomposes its ancestors
+  WorldImage[] boardTree;
+  int boardTreeLeaves;
+  // one shared square image per palette color, all cellsize wide
+  WorldImage[] swatches = new WorldImage[256];
+  // the pixel renderer, or null while the board is drawn as an image tree
+  RasterBoardRenderer raster;
+  // timings of ticks, frames and moves, or null until metrics are switched on
+  FloodMetrics metrics;
+
+  // colors asked for but not played yet, played in order as soon as the world
+  // gets to them
+  IntList pendingMoves = new IntList();
+  // ticks in a row that found nothing to do. An idle world only takes one
+  // tick in tickStride, and after calmTicks of them the stride doubles up to
+  // maxTickStride; any move brings it back to every tick
+  int idleTicks = 0;
+  int calmTicks = 10;
+  int tickStride = 1;
+  int maxTickStride = 16;
+  // the most cells a tick looks at while catching the cells up with a move,
+  // so a huge capture spreads over several ticks as a wave; 0 catches up in
+  // one tick
+  long waveBudget = 0;
+
+  // whether the best next color is shown, and the searches that find it
+  boolean showHint = false;
+  HintService hints = new HintService();
+
   Utils util = new Utils();
 
   // a constructor that takes in two numbers: the size of the board and the number
-  // of colors
+  // of colors; every game gets a seed of its own
   FloodIt(int boardSize, int numberOfColors) {
+    this(boardSize, numberOfColors, System.nanoTime());
+  }
 
-    rand = new Random(5);
-    this.board = new ArrayList<ArrayList<Cell>>();
-    this.colorList = new ArrayList<Color>();
+  // a constructor for the game of the given seed, which deals the same boards
+  // every time
+  FloodIt(int boardSize, int numberOfColors, long seed) {
+    this.engine = new FloodEngine(seed, boardSize, numberOfColors);
+    this.board = this.engine.board;
+    this.colorList = this.engine.palette;
+    this.boardSize = boardSize;
+    this.numberOfColors = numberOfColors;
+  }
 
-    if (boardSize < 2 || boardSize > 14) {
-      throw new IllegalArgumentException("The size of the board must be between 2 and 14.");
-    }
-    else {
-      this.boardSize = boardSize;
-      this.totalTries = (boardSize * boardSize) - boardSize;
-    }
+  // the seed of this game
+  long seed() {
+    return this.engine.seed;
+  }
 
-    if (numberOfColors < 3 || numberOfColors > 8) {
-      throw new IllegalArgumentException("The number of colors must be between 3 and 8.");
-    }
-    else {
-      this.numberOfColors = numberOfColors;
-    }
+  // the seed of the board on the table; the engine deals it again from it
+  long boardSeed() {
+    return this.engine.boardSeed;
+  }
+
+  // a view onto the cell in column x, row y
+  Cell cellAt(int x, int y) {
+    return new Cell(this.board, x, y);
   }
 
   // resets the game
   public void resetGame() {
-    this.userTries = 0;
     theGameIsOver = false;
     this.timer = 0;
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        this.board.get(i).get(j).color = this.colorList.get(this.rand.nextInt(this.numberOfColors));
-        this.board.get(i).get(j).flooded = false;
-      }
-    }
-    floodBoardCells();
+    this.pendingMoves.clear();
+    wake();
+    this.engine.reset();
+    refreshHint();
   }
 
   // ends the world
@@ -219,323 +378,436 @@ class FloodIt extends World {
     return this.renderGame();
   }
 
+  // starts keeping timings of this game, shared with its engine
+  FloodMetrics enableMetrics() {
+    if (this.metrics == null) {
+      this.metrics = new FloodMetrics();
+      this.engine.metrics = this.metrics;
+    }
+    return this.metrics;
+  }
+
   // renders the game
   public WorldScene renderGame() {
+    RenderEvent event = new RenderEvent();
+    event.begin();
+    long start = this.metrics == null ? 0 : System.nanoTime();
+    if (event.isEnabled()) {
+      event.columnsDrawn = this.board.dirtyColumns.cardinality();
+      event.boardSize = boardSize;
+    }
     WorldScene background = new WorldScene(sceneSize, sceneSize);
-    background.placeImageXY(renderBoardImage(), cellsize * boardSize, cellsize * boardSize);
+    int boardPixels = boardPixels();
+    background.placeImageXY(renderBoardImage(), boardPixels, boardPixels);
 
     // display timer
     String timerStr = "" + timer;
     TextImage timerImage = new TextImage(timerStr, 24, FontStyle.REGULAR, Color.GRAY);
-    background.placeImageXY(timerImage, cellsize, (cellsize * boardSize) + 120);
+    background.placeImageXY(timerImage, cellsize, boardPixels + 120);
 
     // user won or lose
     String text = "";
     boolean isAllFlooded = isAllFlooded();
-    if (!isAllFlooded && this.userTries == this.totalTries) {
+    if (!isAllFlooded && this.engine.movesLeft() == 0) {
       text = "You Lose!";
       TextImage userWonOrLoss = new TextImage(text, 32, FontStyle.BOLD, Color.RED);
-      background.placeImageXY(userWonOrLoss, cellsize * boardSize, (cellsize * boardSize) + 270);
+      background.placeImageXY(userWonOrLoss, boardPixels, boardPixels + 270);
       theGameIsOver = true;
     }
     else if (isAllFlooded) {
       text = "You Win!";
       TextImage userWonOrLoss = new TextImage(text, 32, FontStyle.BOLD, Color.GREEN);
-      background.placeImageXY(userWonOrLoss, cellsize * boardSize, (cellsize * boardSize) + 270);
+      background.placeImageXY(userWonOrLoss, boardPixels, boardPixels + 270);
       theGameIsOver = true;
     }
     else {
       timer++;
+      Hint hint = this.showHint ? this.hints.current(this.engine.hash()) : null;
+      if (hint != null) {
+        String hintText = "Hint: " + this.colorList.name(hint.color);
+        if (hint.movesToWin > 0) {
+          hintText += " (" + (hint.optimal ? "" : "~") + hint.movesToWin + " to win)";
+        }
+        background.placeImageXY(new TextImage(hintText, 20, FontStyle.REGULAR,
+            this.colorList.get(hint.color)), boardPixels, boardPixels + 200);
+      }
     }
 
+    if (this.metrics != null) {
+      this.metrics.renders.record(System.nanoTime() - start);
+    }
+    event.commit();
     return background;
   }
 
   // produce an image of the world
   public WorldImage renderBoardImage() {
+    if (this.raster != null) {
+      return new AboveImage(this.raster.render(), this.triesImage());
+    }
     return renderAllCells();
   }
 
-  // draw the nodes
-  public WorldImage renderAllCells() {
-    WorldImage i = new EmptyImage();
-
-    for (int index = 0; index < board.size(); index++) {
-      i = new BesideImage(i, this.renderRow(board.get(index)));
+  // width of the drawn board in pixels
+  int boardPixels() {
+    if (this.raster != null) {
+      return this.raster.width;
     }
-    TextImage userTries = new TextImage("" + this.userTries + "/" + this.totalTries, 32,
+    return cellsize * boardSize;
+  }
+
+  // switches to painting the board into a pixel buffer, shrinking the cells
+  // of boards too big to fit in half the scene
+  void useRasterRenderer() {
+    this.raster = new RasterBoardRenderer(this.board, cellsize, sceneSize / 2);
+  }
+
+  // sets the move limit of every board from now on by playing it out many
+  // times when it is dealt, rather than allowing size * size - size moves
+  void calibrateMoveLimits() {
+    this.engine.calibrator = new MoveLimitCalibrator();
+  }
+
+  // the tries display shown under the board
+  WorldImage triesImage() {
+    return new TextImage("" + this.engine.movesMade + "/" + this.engine.moveLimit, 32,
         FontStyle.BOLD, Color.GRAY);
-    i = new AboveImage(i, userTries);
+  }
 
-    return i;
+  // draw the nodes, redrawing only the columns that changed since last time
+  public WorldImage renderAllCells() {
+    if (this.boardTree == null) {
+      this.boardTreeLeaves = Integer.highestOneBit(Math.max(1, boardSize - 1)) * 2;
+      this.boardTree = new WorldImage[this.boardTreeLeaves * 2];
+      Arrays.fill(this.boardTree, new EmptyImage());
+      this.board.markAllDirty();
+    }
+    BitSet dirty = this.board.dirtyColumns;
+    for (int x = dirty.nextSetBit(0); x >= 0 && x < boardSize; x = dirty.nextSetBit(x + 1)) {
+      this.boardTree[this.boardTreeLeaves + x] = this.renderRow(x);
+    }
+    // recompose the parents of the redrawn columns, one level at a time
+    for (int level = this.boardTreeLeaves; level > 1; level = level / 2) {
+      BitSet parents = new BitSet();
+      for (int k = dirty.nextSetBit(0); k >= 0; k = dirty.nextSetBit(k + 1)) {
+        parents.set(k / 2);
+      }
+      for (int k = parents.nextSetBit(0); k >= 0; k = parents.nextSetBit(k + 1)) {
+        int node = level / 2 + k;
+        this.boardTree[node] = new BesideImage(this.boardTree[2 * node],
+            this.boardTree[2 * node + 1]);
+      }
+      dirty = parents;
+    }
+    this.board.dirtyColumns.clear();
+    return new AboveImage(this.boardTree[1], this.triesImage());
   }
 
-  // draw a row of nodes
-  public WorldImage renderRow(ArrayList<Cell> row) {
+  // draw the column of nodes at x
+  public WorldImage renderRow(int x) {
     WorldImage i = new EmptyImage();
 
-    for (int index = 0; index < row.size(); index++) {
-      i = new AboveImage(i, row.get(index).cellImage(cellsize));
+    for (int index = this.board.index(x, 0); index < this.board.index(x + 1, 0); index++) {
+      i = new AboveImage(i, this.swatch(this.board.colorIndexAt(index)));
     }
     return i;
   }
 
+  // the square image of the given palette color
+  WorldImage swatch(int colorIndex) {
+    if (this.swatches[colorIndex] == null) {
+      this.swatches[colorIndex] = new RectangleImage(cellsize, cellsize, OutlineMode.SOLID,
+          this.colorList.get(colorIndex));
+    }
+    return this.swatches[colorIndex];
+  }
+
   // creates board scene
   void makeBoard() {
-    this.userTries = 0;
+    this.engine.movesMade = 0;
     this.timer = 0;
     makeColors();
     buildBoardCells();
     connectBoardCells();
     floodBoardCells();
+    this.engine.limitMoves();
   }
 
   // creates cells
   void buildBoardCells() {
-    String render = "";
-    for (int i = 0; i < boardSize; i++) {
-      ArrayList<Cell> row = new ArrayList<Cell>();
-      for (int j = 0; j < boardSize; j++) {
-        Color color = this.colorList.get(this.rand.nextInt(this.numberOfColors));
-        Cell cell = new Cell(i, j, color);
-        row.add(cell);
-        if (boardSize == 2) {
-          System.out
-              .println("(" + i + "," + j + ") " + util.getColor(color) + " " + cell.getCellInfo());
-
-        }
+    this.engine.deal();
+    if (boardSize == 2) {
+      for (int index = 0; index < this.board.cellCount(); index++) {
+        Cell cell = this.cellAt(index / boardSize, index % boardSize);
+        System.out.println("(" + cell.x + "," + cell.y + ") "
+            + this.colorList.name(cell.colorIndex()) + " " + cell.getCellInfo());
       }
-      render = render + "\n";
-      this.board.add(row);
     }
   }
 
-  // connects cells
+  // connects cells; neighbors follow from the packed layout, so there is
+  // nothing left to link
   void connectBoardCells() {
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        if (i > 0) {
-          this.board.get(i).get(j).top = this.board.get(i - 1).get(j);
-        }
-        if (j < boardSize - 1) {
-          this.board.get(i).get(j).right = this.board.get(i).get(j + 1);
-        }
-        if (i < boardSize - 1) {
-          this.board.get(i).get(j).bottom = this.board.get(i + 1).get(j);
-        }
-        if (j > 0) {
-          this.board.get(i).get(j).left = this.board.get(i).get(j - 1);
-        }
-      }
-    }
+    return;
   }
 
   // checks if adjacent cells are flooded
   boolean isCurrentCellAdjacentToFlooded(Cell currentCell) {
-    return (currentCell.left.isFlooded() || currentCell.top.isFlooded()
-        || currentCell.right.isFlooded() || currentCell.bottom.isFlooded());
+    return (currentCell.left().isFlooded() || currentCell.top().isFlooded()
+        || currentCell.right().isFlooded() || currentCell.bottom().isFlooded());
   }
 
   // checks if cells are the same color
   boolean areCellsSameColor(Cell givenCell, Cell currentCell) {
-    return (givenCell.color.equals(currentCell.color));
+    return givenCell.sameColor(currentCell);
   }
 
   // mark cells as flooded on top-left corner and any adjacent matching color
   // cells
   void floodBoardCells() {
-
-    Cell floodedCell = null;
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        if (i == 0 && j == 0) {
-          this.board.get(0).get(0).flooded = true;
-          floodedCell = this.board.get(0).get(0);
-          continue;
-        }
-        if (isCurrentCellAdjacentToFlooded(this.board.get(i).get(j))
-            && areCellsSameColor(floodedCell, this.board.get(i).get(j))) {
-          this.board.get(i).get(j).flooded = true;
-        }
-      }
-    }
+    this.engine.startFlood();
   }
 
-  // mark all remaining cells to top-left cell as flooded with color
-  void floodBoardCellsColorOnTick() {
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        if (this.board.get(i).get(j).isFlooded()
-            && !areCellsSameColor(this.board.get(0).get(0), this.board.get(i).get(j))) {
-          this.board.get(i).get(j).color = this.board.get(0).get(0).color;
-        }
-      }
-    }
-    floodBoardCells();
+  // mark all remaining cells to top-left cell as flooded with color; the
+  // flooded cells take the top-left color implicitly, so only the frontier
+  // cells of that color and what they connect to are visited. Returns the
+  // number of cells captured
+  int floodBoardCellsColorOnTick() {
+    return this.engine.syncCells();
   }
 
   // mark top-left cell as flooded with color using given cell's color
   void floodBoardCellsColor(Cell givenCell) {
-    if (givenCell.isFlooded() || areCellsSameColor(this.board.get(0).get(0), givenCell)) {
+    if (givenCell.isFlooded() || areCellsSameColor(this.cellAt(0, 0), givenCell)) {
       return;
     }
-    this.board.get(0).get(0).color = givenCell.color;
+    int colorIndex = this.colorList.indexOf(givenCell.rgb());
+    if (colorIndex < 0) {
+      colorIndex = this.colorList.add(givenCell.getColor());
+    }
+    this.engine.playColor(colorIndex);
+  }
+
+  // a solver over the game as it stands now; throws when the position has
+  // more regions than a solver takes on
+  FloodSolver solver() {
+    return new FloodSolver(this.engine);
+  }
+
+  // number of regions left on the board, counting the flooded one
+  int regionsLeft() {
+    return this.engine.regions.regionsLeft;
   }
 
   // check if all cells are flooded
   boolean isAllFlooded() {
-    boolean isAllFlooded = true;
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        if (!this.board.get(i).get(j).isFlooded()) {
-          isAllFlooded = false;
-        }
-      }
-    }
-    return isAllFlooded;
+    return this.engine.floodedCount == this.board.cellCount();
+  }
+
+  // percentage of the board that is flooded
+  double percentFlooded() {
+    return 100.0 * this.engine.floodedCount / this.board.cellCount();
+  }
+
+  // number of cells showing the given palette color
+  int colorCount(int colorIndex) {
+    return this.engine.colorCounts[colorIndex];
   }
 
   // creates text on board
   String renderBoardText() {
-    String render = "";
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
-        render = render + "" + this.board.get(i).get(j).getCellInfo() + " ";
-      }
-      render = render + "\n";
+    BoardTextWriter writer = new BoardTextWriter(this.board);
+    StringBuilder render = new StringBuilder(
+        (int) Math.min(writer.textLengthBound(), Integer.MAX_VALUE - 8));
+    try {
+      writer.writeText(render);
     }
-    return render;
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return render.toString();
   }
 
-  // prints board
+  // prints board, streaming it out so even huge boards print in flat memory
   void printBoard() {
-    System.out.println(renderBoardText());
+    try {
+      new BoardTextWriter(this.board).writeText(Channels.newChannel(System.out));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    System.out.println();
   }
 
   // create a random list of colors
   public ArrayList<Color> makeColors() {
-    ArrayList<Color> availableColors = new ArrayList<Color>(numberOfColors);
-    availableColors.add(Color.blue);
-    availableColors.add(Color.green);
-    availableColors.add(Color.yellow);
-    availableColors.add(Color.red);
-    availableColors.add(Color.pink);
-    availableColors.add(Color.orange);
-    availableColors.add(Color.MAGENTA);
-    availableColors.add(Color.gray);
-
-    for (int i = 0; i < numberOfColors; i++) {
-      int colorIndex = this.rand.nextInt(availableColors.size());
-      this.colorList.add(availableColors.get(colorIndex));
-      availableColors.remove(colorIndex);
-    }
-    return this.colorList;
+    return this.engine.chooseColors().toList();
   }
 
   // displays number of colors
   public void printColorList() {
     System.out.print("Number of Colors " + numberOfColors + " ");
     for (int i = 0; i < numberOfColors; i++) {
-      System.out.print(util.getColor(this.colorList.get(i)) + " ");
+      System.out.print(this.colorList.name(i) + " ");
     }
   }
 
   // handles mouse clicks and is given the mouse location
   public void onMouseClicked(Posn pos) {
 
-    ICell cellPressed = new MtCell();
-
-    pos.y = pos.y + cellsize / 2;
+    ICell cellPressed = this.cellAtPixel(pos);
 
-    if (this.boardSize == 4) {
-      pos.x = pos.x + cellsize;
-      pos.y = pos.y + cellsize;
-    }
-    else if (this.boardSize == 8) {
-      pos.x = pos.x + cellsize * 3;
-      pos.y = pos.y + cellsize * 3;
-    }
-    else if (this.boardSize == 12) {
-      pos.x = pos.x + cellsize * 5;
-      pos.y = pos.y + cellsize * 5;
+    if (!cellPressed.isEmpty() && !theGameIsOver) {
+      Cell cell = (Cell) cellPressed;
+      queueMove(this.board.colorIndexAt(cell.index));
+      playPendingMoves();
     }
+  }
 
-    for (int i = 0; i < boardSize; i++) {
-      for (int j = 0; j < boardSize; j++) {
+  // asks for the given palette color to be played next
+  void queueMove(int colorIndex) {
+    this.pendingMoves.add(colorIndex);
+    wake();
+  }
 
-        if (!this.board.get(i).get(j).isEmpty()
-            && pos.x >= this.board.get(i).get(j).x * this.cellsize + cellsize * boardSize
-                - this.cellsize
-            && pos.y >= this.board.get(i).get(j).y * this.cellsize + cellsize * boardSize
-                - this.cellsize
-            && pos.x <= (this.board.get(i).get(j).x * this.cellsize + cellsize * boardSize)
-            && pos.y <= (this.board.get(i).get(j).y * this.cellsize + cellsize * boardSize)) {
-          cellPressed = this.board.get(i).get(j);
-          break;
-        }
+  // plays the queued colors in the order they came, returns how many were
+  // played; the cells catch up on the next tick
+  int playPendingMoves() {
+    int played = 0;
+    for (int k = 0; k < this.pendingMoves.size(); k++) {
+      if (this.engine.applyMove(this.pendingMoves.get(k))) {
+        played++;
       }
     }
-    if (!cellPressed.isEmpty()) {
-      if (!theGameIsOver && this.userTries < this.totalTries) {
-        this.userTries++;
-      }
-      else {
-        return;
-      }
-      floodBoardCellsColor((Cell) cellPressed);
+    this.pendingMoves.clear();
+    if (played > 0) {
+      refreshHint();
+    }
+    return played;
+  }
+
+  // drops the hint search for the position before and, while hints are
+  // shown, starts one for the position now; never waits for either
+  void refreshHint() {
+    if (this.showHint) {
+      this.hints.request(this.engine);
+    }
+    else {
+      this.hints.cancel();
+    }
+  }
 
+  // goes back to taking every tick
+  void wake() {
+    this.idleTicks = 0;
+    this.tickStride = 1;
+  }
+
+  // the cell drawn at the given scene position, or an empty cell off the board;
+  // the board sits above the tries display, both centered on
+  // (boardPixels, boardPixels), so its corner follows from their sizes
+  ICell cellAtPixel(Posn pos) {
+    int boardPixels = boardPixels();
+    double left = boardPixels - boardPixels / 2.0;
+    double top = boardPixels - (boardPixels + this.triesImage().getHeight()) / 2.0;
+    double dx = pos.x - left;
+    double dy = pos.y - top;
+    if (dx < 0 || dy < 0 || dx >= boardPixels || dy >= boardPixels) {
+      return new MtCell(pos.x, pos.y);
     }
+    int x = (int) (dx * boardSize / boardPixels);
+    int y = (int) (dy * boardSize / boardPixels);
+    return this.cellAt(x, y);
   }
 
-  // handles 'r' key press to reset the game and create a new board
+  // handles 'r' key press to reset the game and create a new board, 'u' to
+  // take back the last move, 'y' to make it again and 'h' to show or hide the
+  // best next color
   public void onKeyEvent(String ke) {
     if (ke.equals("r")) {
       System.out.println("onKey event occured and r key is pressed to reset the game !");
       this.resetGame();
     }
+    else if (ke.equals("u")) {
+      undoMove();
+    }
+    else if (ke.equals("y")) {
+      redoMove();
+    }
+    else if (ke.equals("h")) {
+      this.showHint = !this.showHint;
+      refreshHint();
+    }
     return;
   }
 
-  // handles ticking of the clock and updating the world if needed
+  // takes back the last move, even once the game is over
+  boolean undoMove() {
+    playPendingMoves();
+    wake();
+    if (!this.engine.undo()) {
+      return false;
+    }
+    theGameIsOver = false;
+    refreshHint();
+    return true;
+  }
+
+  // makes the last move taken back again
+  boolean redoMove() {
+    wake();
+    if (!this.engine.redo()) {
+      return false;
+    }
+    refreshHint();
+    return true;
+  }
+
+  // handles ticking of the clock and updating the world if needed; a tick
+  // with no move since the last one touches nothing
   public void onTick() {
-    floodBoardCellsColorOnTick();
+    playPendingMoves();
+    if (this.engine.cellsBehind) {
+      wake();
+    }
+    else {
+      this.idleTicks++;
+      if (this.idleTicks % this.tickStride != 0) {
+        return;
+      }
+      if (this.idleTicks >= this.calmTicks) {
+        this.tickStride = Math.min(this.tickStride * 2, this.maxTickStride);
+      }
+    }
+    TickEvent event = new TickEvent();
+    event.begin();
+    long start = this.metrics == null ? 0 : System.nanoTime();
+    int captured = 0;
+    if (this.engine.cellsBehind) {
+      captured = this.waveBudget > 0 ? this.engine.syncCells(this.waveBudget)
+          : floodBoardCellsColorOnTick();
+    }
+    if (this.metrics != null) {
+      this.metrics.ticks.record(System.nanoTime() - start);
+    }
+    if (event.shouldCommit()) {
+      event.cellsCaptured = captured;
+      event.commit();
+    }
     return;
   }
 }
 
 // represents util class
 class Utils {
+  ColorTable table = Palette.TABLE;
+
+  // the name of the given color, looked up by its RGB value
   public String getColor(Color c) {
     if (c == null) {
       return "Unknown Color";
     }
-    else if (c.equals(Color.RED)) {
-      return "RED";
-    }
-    else if (c.equals(Color.GREEN)) {
-      return "GREEN";
-    }
-    else if (c.equals(Color.BLUE)) {
-      return "BLUE";
-    }
-    else if (c.equals(Color.YELLOW)) {
-      return "YELLOW";
-    }
-    else if (c.equals(Color.PINK)) {
-      return "PINK";
-    }
-    else if (c.equals(Color.ORANGE)) {
-      return "ORANGE";
-    }
-    else if (c.equals(Color.MAGENTA)) {
-      return "MAGENTA";
-    }
-    else if (c.equals(Color.GRAY)) {
-      return "GRAY";
-    }
-    else {
-      return "Unknown Color";
-    }
+    return this.table.nameOf(c.getRGB());
   }
 }
 
@@ -575,10 +847,10 @@ class ExamplesFloodItWorld {
 
   // init world data
   void initWorld() {
-    world1 = new FloodIt(2, 3);
-    world2 = new FloodIt(4, 5);
-    world3 = new FloodIt(8, 6);
-    world4 = new FloodIt(12, 7);
+    world1 = new FloodIt(2, 3, 5);
+    world2 = new FloodIt(4, 5, 5);
+    world3 = new FloodIt(8, 6, 5);
+    world4 = new FloodIt(12, 7, 5);
   }
 
   // tests for floodIt
@@ -624,9 +896,9 @@ class ExamplesFloodItWorld {
   boolean testMakeColors(Tester t) {
     initWorld();
     return t.checkExpect(world1.makeColors(),
-        new ArrayList<Color>(Arrays.asList(Color.ORANGE, Color.PINK, Color.YELLOW)))
+        new ArrayList<Color>(Arrays.asList(Color.PINK, Color.BLUE, Color.RED)))
         && t.checkExpect(world2.makeColors(), new ArrayList<Color>(
-            Arrays.asList(Color.ORANGE, Color.PINK, Color.YELLOW, Color.GRAY, Color.GREEN)));
+            Arrays.asList(Color.PINK, Color.BLUE, Color.RED, Color.GREEN, Color.ORANGE)));
   }
 
   // test getCellInfo()
@@ -663,7 +935,7 @@ class ExamplesFloodItWorld {
 
     this.world4.makeBoard();
 
-    WorldImage image = world4.renderRow(this.world4.board.get(0));
+    WorldImage image = world4.renderRow(0);
     return t.checkExpect(image.getHeight(), 480.0) && t.checkExpect(image.getWidth(), 40.0);
   }
 
@@ -685,8 +957,8 @@ class ExamplesFloodItWorld {
     this.world1.makeColors();
     this.world1.buildBoardCells();
 
-    return t.checkExpect(util.getColor(world1.board.get(0).get(0).color), "YELLOW")
-        && t.checkExpect(util.getColor(world1.board.get(1).get(1).color), "PINK");
+    return t.checkExpect(util.getColor(world1.cellAt(0, 0).getColor()), "PINK")
+        && t.checkExpect(util.getColor(world1.cellAt(1, 1).getColor()), "BLUE");
   }
 
   // test connectBoardCells()
@@ -697,14 +969,14 @@ class ExamplesFloodItWorld {
     this.world1.buildBoardCells();
     this.world1.connectBoardCells();
 
-    return t.checkExpect(this.world1.board.get(0).get(0).top.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(0).get(0).left.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(0).get(0).right.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(0).get(0).bottom.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).top.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).left.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).right.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(1).get(1).bottom.isEmpty(), true);
+    return t.checkExpect(this.world1.cellAt(0, 0).top().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(0, 0).left().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(0, 0).right().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(0, 0).bottom().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).top().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).left().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).right().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(1, 1).bottom().isEmpty(), true);
   }
 
   // testgetColor()
@@ -720,12 +992,12 @@ class ExamplesFloodItWorld {
     this.world2.makeBoard();
 
     return t.checkExpect(this.world1.renderBoardText(),
-        "Cell[(0,0) YELLOW] Cell[(0,1) ORANGE] \nCell[(1,0) YELLOW] Cell[(1,1) PINK] \n")
+        "Cell[(0,0) PINK] Cell[(0,1) PINK] \nCell[(1,0) RED] Cell[(1,1) BLUE] \n")
         && t.checkExpect(this.world2.renderBoardText(),
-            "Cell[(0,0) ORANGE] Cell[(0,1) GREEN] Cell[(0,2) PINK] Cell[(0,3) YELLOW] \n"
-                + "Cell[(1,0) PINK] Cell[(1,1) PINK] Cell[(1,2) GRAY] Cell[(1,3) YELLOW] \n"
-                + "Cell[(2,0) ORANGE] Cell[(2,1) GRAY] Cell[(2,2) ORANGE] Cell[(2,3) GRAY] \n"
-                + "Cell[(3,0) ORANGE] Cell[(3,1) YELLOW] Cell[(3,2) YELLOW] Cell[(3,3) GRAY] \n");
+            "Cell[(0,0) PINK] Cell[(0,1) BLUE] Cell[(0,2) PINK] Cell[(0,3) GREEN] \n"
+                + "Cell[(1,0) ORANGE] Cell[(1,1) RED] Cell[(1,2) GREEN] Cell[(1,3) GREEN] \n"
+                + "Cell[(2,0) ORANGE] Cell[(2,1) BLUE] Cell[(2,2) BLUE] Cell[(2,3) RED] \n"
+                + "Cell[(3,0) RED] Cell[(3,1) BLUE] Cell[(3,2) GREEN] Cell[(3,3) BLUE] \n");
   }
 
   // test makeBoard()
@@ -734,16 +1006,16 @@ class ExamplesFloodItWorld {
 
     this.world1.makeBoard();
 
-    return t.checkExpect(this.world1.board.get(0).get(0).top.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(0).get(0).left.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(0).get(0).right.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(0).get(0).bottom.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).top.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).left.isEmpty(), false)
-        && t.checkExpect(this.world1.board.get(1).get(1).right.isEmpty(), true)
-        && t.checkExpect(this.world1.board.get(1).get(1).bottom.isEmpty(), true)
+    return t.checkExpect(this.world1.cellAt(0, 0).top().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(0, 0).left().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(0, 0).right().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(0, 0).bottom().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).top().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).left().isEmpty(), false)
+        && t.checkExpect(this.world1.cellAt(1, 1).right().isEmpty(), true)
+        && t.checkExpect(this.world1.cellAt(1, 1).bottom().isEmpty(), true)
         && t.checkExpect(this.world1.renderBoardText(),
-            "Cell[(0,0) YELLOW] Cell[(0,1) ORANGE] \nCell[(1,0) YELLOW] Cell[(1,1) PINK] \n");
+            "Cell[(0,0) PINK] Cell[(0,1) PINK] \nCell[(1,0) RED] Cell[(1,1) BLUE] \n");
   }
 
   // test printBoard()
@@ -777,10 +1049,10 @@ class ExamplesFloodItWorld {
 
     System.out.println("Building world1");
     this.world1.makeBoard();
-    t.checkExpect(util.getColor(world1.board.get(0).get(0).color), "YELLOW");
-    t.checkExpect(util.getColor(world1.board.get(0).get(1).color), "ORANGE");
-    t.checkExpect(util.getColor(world1.board.get(1).get(0).color), "YELLOW");
-    t.checkExpect(util.getColor(world1.board.get(1).get(1).color), "PINK");
+    t.checkExpect(util.getColor(world1.cellAt(0, 0).getColor()), "PINK");
+    t.checkExpect(util.getColor(world1.cellAt(0, 1).getColor()), "PINK");
+    t.checkExpect(util.getColor(world1.cellAt(1, 0).getColor()), "RED");
+    t.checkExpect(util.getColor(world1.cellAt(1, 1).getColor()), "BLUE");
 
     world1.scene = world1.makeScene();
     world1.bigBang(world1.sceneSize, world1.sceneSize, delay);
@@ -803,11 +1075,11 @@ class ExamplesFloodItWorld {
     this.world4.makeBoard();
 
     this.world4.scene = world4.renderGame();
-    this.world4.board.get(0).get(0).flooded = true;
-    this.world4.board.get(0).get(1).flooded = true;
+    this.world4.cellAt(0, 0).setFlooded(true);
+    this.world4.cellAt(0, 2).setFlooded(true);
     this.world4.resetGame();
-    return t.checkExpect(this.world4.board.get(0).get(0).flooded, true)
-        && t.checkExpect(this.world4.board.get(0).get(1).flooded, false);
+    return t.checkExpect(this.world4.cellAt(0, 0).isFlooded(), true)
+        && t.checkExpect(this.world4.cellAt(0, 2).isFlooded(), false);
   }
 
   // test isFlooded()
@@ -817,62 +1089,63 @@ class ExamplesFloodItWorld {
     this.world4.makeBoard();
 
     this.world4.scene = world4.renderGame();
-    this.world4.board.get(0).get(0).flooded = true;
-    this.world4.board.get(0).get(1).flooded = false;
-    return t.checkExpect(this.world4.board.get(0).get(0).isFlooded(), true)
-        && t.checkExpect(this.world4.board.get(0).get(1).isFlooded(), false);
+    this.world4.cellAt(0, 0).setFlooded(true);
+    this.world4.cellAt(0, 1).setFlooded(false);
+    return t.checkExpect(this.world4.cellAt(0, 0).isFlooded(), true)
+        && t.checkExpect(this.world4.cellAt(0, 1).isFlooded(), false);
   }
 
   // test floodBoardCells()
   boolean testfloodBoardCells(Tester t) {
     initWorld();
-    this.world4.userTries = 0;
+    this.world4.engine.movesMade = 0;
     this.world4.makeColors();
     this.world4.buildBoardCells();
     this.world4.connectBoardCells();
     this.world4.floodBoardCells();
-    return t.checkExpect(this.world4.board.get(0).get(0).flooded, true);
+    return t.checkExpect(this.world4.cellAt(0, 0).isFlooded(), true);
   }
 
   // test floodBoardCellsColor()
   boolean testFloodBoardCellsColor(Tester t) {
     initWorld();
-    this.world4.userTries = 0;
+    this.world4.engine.movesMade = 0;
     this.world4.makeColors();
     this.world4.buildBoardCells();
     this.world4.connectBoardCells();
     this.world4.floodBoardCells();
-    this.world4.floodBoardCellsColor(this.world4.board.get(0).get(1));
-    return t.checkExpect(this.world4.board.get(0).get(0).flooded, true)
-        && t.checkExpect(this.world4.board.get(0).get(1).flooded, true) && t.checkExpect(
-            this.world4.board.get(0).get(0).color, this.world4.board.get(0).get(1).color);
+    this.world4.floodBoardCellsColor(this.world4.cellAt(0, 1));
+    this.world4.floodBoardCellsColorOnTick();
+    return t.checkExpect(this.world4.cellAt(0, 0).isFlooded(), true)
+        && t.checkExpect(this.world4.cellAt(0, 1).isFlooded(), true) && t.checkExpect(
+            this.world4.cellAt(0, 0).getColor(), this.world4.cellAt(0, 1).getColor());
   }
 
   // test isAllFlooded()
   boolean testisAllFlooded(Tester t) {
     initWorld();
-    this.world4.userTries = 0;
+    this.world4.engine.movesMade = 0;
     this.world4.makeColors();
     this.world4.buildBoardCells();
     this.world4.connectBoardCells();
     this.world4.floodBoardCells();
-    this.world4.floodBoardCellsColor(this.world4.board.get(0).get(1));
+    this.world4.floodBoardCellsColor(this.world4.cellAt(0, 1));
     return t.checkExpect(this.world4.isAllFlooded(), false);
   }
 
   // test floodBoardCellsColorOnTick()
   boolean testFloodBoardCellsColorOnTick(Tester t) {
     initWorld();
-    this.world4.userTries = 0;
+    this.world4.engine.movesMade = 0;
     this.world4.makeColors();
     this.world4.buildBoardCells();
     this.world4.connectBoardCells();
     this.world4.floodBoardCells();
-    this.world4.floodBoardCellsColor(this.world4.board.get(0).get(1));
+    this.world4.floodBoardCellsColor(this.world4.cellAt(0, 1));
     this.world4.floodBoardCellsColorOnTick();
-    return t.checkExpect(this.world4.board.get(0).get(0).flooded, true)
-        && t.checkExpect(this.world4.board.get(0).get(1).flooded, true) && t.checkExpect(
-            this.world4.board.get(0).get(0).color, this.world4.board.get(0).get(1).color);
+    return t.checkExpect(this.world4.cellAt(0, 0).isFlooded(), true)
+        && t.checkExpect(this.world4.cellAt(0, 1).isFlooded(), true) && t.checkExpect(
+            this.world4.cellAt(0, 0).getColor(), this.world4.cellAt(0, 1).getColor());
   }
 
   //test WorldEnds() 
@@ -900,4 +1173,1001 @@ class ExamplesFloodItWorld {
     t.checkExpect(world1.isAllFlooded(), false);
     t.checkExpect(world4.isAllFlooded(), false);
   }
+
+  // test a board far past the old 14x14 limit
+  boolean testLargePackedBoard(Tester t) {
+    FloodIt big = new FloodIt(4096, 6, 5);
+    big.makeBoard();
+    return t.checkExpect(big.board.cellCount(), 4096 * 4096)
+        && t.checkExpect(big.board.colors.length, 4096 * 4096)
+        && t.checkExpect(big.cellAt(0, 0).isFlooded(), true)
+        && t.checkExpect(big.cellAt(4095, 4095).right().isEmpty(), true)
+        && t.checkExpect(big.isAllFlooded(), false);
+  }
+
+  // test the cell views share the packed storage
+  boolean testCellView(Tester t) {
+    initWorld();
+    this.world2.makeBoard();
+    Cell view = this.world2.cellAt(1, 2);
+    view.setColor(Color.ORANGE);
+    Color recolored = this.world2.cellAt(1, 2).getColor();
+    view.setFlooded(true);
+    return t.checkExpect(recolored, Color.ORANGE)
+        && t.checkExpect(this.world2.cellAt(1, 2).getColor(),
+            this.world2.cellAt(0, 0).getColor())
+        && t.checkExpect(this.world2.cellAt(1, 2).isFlooded(), true)
+        && t.checkExpect(this.world2.cellAt(1, 1).bottom().isFlooded(), true)
+        && t.checkExpect(this.world2.board.isAdjacentToFlooded(this.world2.board.index(1, 3)),
+            true);
+  }
+
+  // test the flood reaches cells that are only connected from below or the right
+  boolean testFloodBoardCellsReachesBack(Tester t) {
+    initWorld();
+    this.world1 = new FloodIt(3, 3, 5);
+    this.world1.makeBoard();
+    PackedBoard b = this.world1.board;
+    int[] pattern = { 0, 1, 2, 0, 1, 0, 0, 0, 0 };
+    for (int index = 0; index < pattern.length; index++) {
+      b.setColorIndex(index, pattern[index]);
+    }
+    this.world1.floodBoardCells();
+    return t.checkExpect(this.world1.cellAt(1, 2).isFlooded(), true)
+        && t.checkExpect(this.world1.cellAt(1, 1).isFlooded(), false)
+        && t.checkExpect(this.world1.board.flooded.cardinality(), 6);
+  }
+
+  // test a tick only captures the cells of the new flood color
+  boolean testFloodBoardCellsColorOnTickCaptures(Tester t) {
+    initWorld();
+    this.world1 = new FloodIt(3, 3, 5);
+    this.world1.makeBoard();
+    PackedBoard b = this.world1.board;
+    int[] pattern = { 0, 1, 2, 1, 1, 2, 2, 2, 2 };
+    for (int index = 0; index < pattern.length; index++) {
+      b.setColorIndex(index, pattern[index]);
+    }
+    this.world1.floodBoardCells();
+    this.world1.floodBoardCellsColor(this.world1.cellAt(0, 1));
+    this.world1.floodBoardCellsColorOnTick();
+    boolean afterFirst = t.checkExpect(b.flooded.cardinality(), 4)
+        && t.checkExpect(this.world1.cellAt(0, 0).getColor(), this.world1.cellAt(1, 1).getColor());
+    this.world1.floodBoardCellsColor(this.world1.cellAt(2, 2));
+    this.world1.floodBoardCellsColorOnTick();
+    return afterFirst && t.checkExpect(this.world1.isAllFlooded(), true)
+        && t.checkExpect(this.world1.cellAt(0, 1).getColor(), this.world1.cellAt(2, 2).getColor());
+  }
+
+  // test the region graph of a small board
+  boolean testRegionGraph(Tester t) {
+    initWorld();
+    this.world1 = new FloodIt(3, 3, 5);
+    this.world1.makeBoard();
+    PackedBoard b = this.world1.board;
+    int[] pattern = { 0, 1, 2, 0, 1, 0, 0, 0, 0 };
+    for (int index = 0; index < pattern.length; index++) {
+      b.setColorIndex(index, pattern[index]);
+    }
+    this.world1.floodBoardCells();
+    RegionGraph g = this.world1.engine.regions;
+    return t.checkExpect(g.regionCount, 3) && t.checkExpect(this.world1.regionsLeft(), 3)
+        && t.checkExpect(g.floodedCells, 6)
+        && t.checkExpect(g.adjEnd[g.floodRoot] - g.adjStart[g.floodRoot], 2)
+        && t.checkExpect(g.applyMove(1), 1) && t.checkExpect(this.world1.regionsLeft(), 2)
+        && t.checkExpect(g.floodedCells, 8) && t.checkExpect(g.isFlooded(b.index(1, 1)), true)
+        && t.checkExpect(g.isFlooded(b.index(0, 2)), false);
+  }
+
+  // test moves through the region graph agree with the cells flooded on tick
+  boolean testRegionGraphMatchesCells(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    boolean agrees = true;
+    int move = 0;
+    while (!this.world4.engine.regions.isOneRegion()) {
+      Cell target = new Cell(0, 0, this.world4.colorList.get(move % 7));
+      this.world4.floodBoardCellsColor(target);
+      this.world4.floodBoardCellsColorOnTick();
+      agrees = agrees && this.world4.engine.regions.floodedCells == this.world4.board.flooded
+          .cardinality();
+      move++;
+    }
+    return t.checkExpect(agrees, true) && t.checkExpect(this.world4.isAllFlooded(), true)
+        && t.checkExpect(this.world4.regionsLeft(), 1);
+  }
+
+  // test the flooded count and color histogram follow the moves
+  boolean testFloodCounters(Tester t) {
+    initWorld();
+    this.world1 = new FloodIt(3, 3, 5);
+    this.world1.makeBoard();
+    PackedBoard b = this.world1.board;
+    int[] pattern = { 0, 1, 2, 1, 1, 2, 2, 2, 2 };
+    for (int index = 0; index < pattern.length; index++) {
+      b.setColorIndex(index, pattern[index]);
+    }
+    this.world1.floodBoardCells();
+    boolean atStart = t.checkExpect(this.world1.engine.floodedCount, 1)
+        && t.checkExpect(this.world1.colorCount(0), 1)
+        && t.checkExpect(this.world1.colorCount(1), 3)
+        && t.checkExpect(this.world1.colorCount(2), 5);
+    this.world1.floodBoardCellsColor(this.world1.cellAt(0, 1));
+    this.world1.floodBoardCellsColorOnTick();
+    return atStart && t.checkExpect(this.world1.engine.floodedCount, 4)
+        && t.checkExpect(this.world1.colorCount(0), 0)
+        && t.checkExpect(this.world1.colorCount(1), 4)
+        && t.checkInexact(this.world1.percentFlooded(), 400.0 / 9, 0.001)
+        && t.checkExpect(this.world1.isAllFlooded(), false);
+  }
+
+  // test quiet frames reuse the drawn board and moves only redraw what changed
+  boolean testRenderCache(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    this.world4.renderAllCells();
+    WorldImage first = this.world4.boardTree[1];
+    WorldImage lastColumn = this.world4.boardTree[this.world4.boardTreeLeaves + 11];
+    this.world4.onTick();
+    this.world4.renderAllCells();
+    boolean quiet = t.checkExpect(this.world4.boardTree[1] == first, true);
+    this.world4.floodBoardCellsColor(new Cell(0, 0, this.world4.colorList.get(3)));
+    boolean dirtied = t.checkExpect(this.world4.board.dirtyColumns.get(0), true)
+        && t.checkExpect(this.world4.board.dirtyColumns.get(11), this.world4.board.fill.reach()
+            >= 11);
+    this.world4.renderAllCells();
+    return quiet && dirtied && t.checkExpect(this.world4.boardTree[1] == first, false)
+        && t.checkExpect(this.world4.boardTree[this.world4.boardTreeLeaves + 11] == lastColumn,
+            this.world4.board.fill.reach() < 11)
+        && t.checkExpect(this.world4.board.dirtyColumns.isEmpty(), true)
+        && t.checkExpect(this.world4.swatch(2) == this.world4.swatch(2), true);
+  }
+
+  // test the pixel renderer paints each cell in its color
+  boolean testRasterRenderer(Tester t) {
+    initWorld();
+    this.world2.makeBoard();
+    this.world2.useRasterRenderer();
+    WorldImage image = this.world2.renderBoardImage();
+    RasterBoardRenderer r = this.world2.raster;
+    int corner = r.view.getColorAt(3 * 40 + 20, 100).getRGB();
+    return t.checkExpect(r.width, 160) && t.checkExpect(image.getWidth(), 160.0)
+        && t.checkExpect(r.lastPaintedCells, 16)
+        && t.checkExpect(corner, this.world2.cellAt(3, 2).getColor().getRGB())
+        && t.checkExpect(r.view.getColorAt(0, 0), this.world2.cellAt(0, 0).getColor())
+        && t.checkExpect(this.world2.boardPixels(), 160);
+  }
+
+  // test a quiet frame paints nothing and huge boards are sampled to fit
+  boolean testRasterRendererLargeBoard(Tester t) {
+    FloodIt big = new FloodIt(1000, 5, 5);
+    big.makeBoard();
+    big.useRasterRenderer();
+    big.renderBoardImage();
+    int firstPaint = big.raster.lastPaintedCells;
+    big.onTick();
+    big.renderBoardImage();
+    RasterBoardRenderer r = big.raster;
+    return t.checkExpect(r.width, 420) && t.checkExpect(firstPaint, 420 * 1000)
+        && t.checkExpect(r.lastPaintedCells, 0) && t.checkExpect(r.cellAtPixel(419), 997)
+        && t.checkExpect(r.view.getColorAt(419, 419), big.cellAt(997, 997).getColor());
+  }
+
+  // test clicks map straight to the cell under them at any board size
+  boolean testCellAtPixel(Tester t) {
+    FloodIt five = new FloodIt(5, 3, 5);
+    five.makeBoard();
+    double top = 200 - (200 + five.triesImage().getHeight()) / 2;
+    ICell inside = five.cellAtPixel(new Posn(100 + 3 * 40 + 5, (int) top + 4 * 40 + 39));
+    ICell corner = five.cellAtPixel(new Posn(100, (int) Math.ceil(top)));
+    ICell outside = five.cellAtPixel(new Posn(99, 150));
+    ICell below = five.cellAtPixel(new Posn(150, (int) top + 200 + 1));
+    FloodIt big = new FloodIt(1000, 5, 5);
+    big.makeBoard();
+    big.useRasterRenderer();
+    double bigTop = 420 - (420 + big.triesImage().getHeight()) / 2;
+    Cell far = (Cell) big.cellAtPixel(new Posn(210 + 419, (int) Math.ceil(bigTop)));
+    return t.checkExpect(((Cell) inside).x, 3) && t.checkExpect(((Cell) inside).y, 4)
+        && t.checkExpect(((Cell) corner).x, 0) && t.checkExpect(((Cell) corner).y, 0)
+        && t.checkExpect(outside.isEmpty(), true) && t.checkExpect(below.isEmpty(), true)
+        && t.checkExpect(far.x, 997) && t.checkExpect(far.y, 0);
+  }
+
+  // test a click floods with the color of the cell under it
+  boolean testOnMouseClicked(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    double top = 480 - (480 + this.world4.triesImage().getHeight()) / 2;
+    Posn pos = new Posn(240 + 11 * 40 + 20, (int) top + 11 * 40 + 20);
+    Color clicked = this.world4.cellAt(11, 11).getColor();
+    this.world4.onMouseClicked(pos);
+    return t.checkExpect(this.world4.engine.movesMade, 1)
+        && t.checkExpect(this.world4.cellAt(0, 0).getColor(), clicked)
+        && t.checkExpect(pos.y, (int) top + 11 * 40 + 20);
+  }
+
+  // test the engine deals the same game as the world for the same seed
+  boolean testFloodEngineNewGame(Tester t) {
+    initWorld();
+    this.world2.makeBoard();
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(5, 4, 5);
+    return t.checkExpect(engine.palette.toList(), this.world2.colorList.toList())
+        && t.checkExpect(engine.board.colors, this.world2.board.colors)
+        && t.checkExpect(engine.movesLeft(), 12) && t.checkExpect(engine.isWon(), false);
+  }
+
+  // test a headless game can be played to the end one move at a time
+  boolean testFloodEnginePlay(Tester t) {
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(42, 14, 6);
+    int move = 0;
+    while (!engine.isWon() && engine.applyMove(move % 6)) {
+      move++;
+    }
+    boolean cellsBehind = engine.board.flooded.cardinality() < engine.board.cellCount();
+    engine.syncCells();
+    return t.checkExpect(engine.isWon(), true) && t.checkExpect(engine.isLost(), false)
+        && t.checkExpect(engine.board.flooded.cardinality(), engine.regions.floodedCells)
+        && t.checkExpect(engine.movesLeft(), engine.moveLimit - engine.movesMade)
+        && t.checkExpect(engine.floodedCount, 196) && t.checkExpect(cellsBehind, true)
+        && t.checkExpect(engine.colorCounts[engine.floodColor()], 196);
+  }
+
+  // test the bitboards flood exactly the cells the frontier does, move by move
+  boolean testBitboardFlood(Tester t) {
+    FloodEngine bits = new FloodEngine();
+    FloodEngine lists = new FloodEngine();
+    lists.bitboards = false;
+    bits.newGame(9, 64, 5);
+    lists.newGame(9, 64, 5);
+    boolean same = bits.board.fill instanceof BitboardFlood
+        && lists.board.fill instanceof FloodFrontier
+        && bits.board.flooded.equals(lists.board.flooded);
+    SplittableRandom moves = new SplittableRandom(3);
+    for (int k = 0; k < 40 && !lists.isWon(); k++) {
+      int color = moves.nextInt(5);
+      bits.applyMove(color);
+      lists.applyMove(color);
+      bits.syncCells();
+      lists.syncCells();
+      same = same && bits.board.flooded.equals(lists.board.flooded)
+          && bits.board.fill.reach() == lists.board.fill.reach();
+    }
+    return t.checkExpect(same, true) && t.checkExpect(bits.floodedCount, lists.floodedCount)
+        && t.checkExpect(bits.board.flooded.cardinality(), bits.floodedCount);
+  }
+
+  // test the engine rejects boards it cannot hold
+  boolean testFloodEngineLimits(Tester t) {
+    return t.checkConstructorException(
+        new IllegalArgumentException("The size of the board must be between 2 and 46340."),
+        "floodit.FloodEngine", 7L, 1, 3)
+        && t.checkConstructorException(
+            new IllegalArgumentException("The number of colors must be between 3 and 256."),
+            "floodit.FloodEngine", 7L, 10, 257);
+  }
+
+  // test moves of colors outside the palette are refused before they change
+  // anything
+  boolean testFloodEngineColors(Tester t) {
+    FloodEngine engine = new FloodEngine(7, 10, 4);
+    engine.makeBoard();
+    long hash = engine.hash();
+    IllegalArgumentException outside = new IllegalArgumentException(
+        "The color must be a palette index between 0 and 3.");
+    return t.checkException(outside, engine, "applyMove", 4)
+        && t.checkException(outside, engine, "applyMove", -1)
+        && t.checkException(outside, engine, "playColor", 255)
+        && t.checkExpect(engine.movesMade, 0) && t.checkExpect(engine.history.size(), 0)
+        && t.checkExpect(engine.hash(), hash);
+  }
+
+  // test the exact solver finds a proven shortest win
+  boolean testSolveExact(Tester t) {
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(3, 8, 4);
+    FloodSolver solver = new FloodSolver(engine);
+    RegionSnapshot snapshot = solver.snapshot;
+    int bound = snapshot.lowerBound(snapshot.startFlooded(), snapshot.startFrontier());
+    SolverResult exact = solver.solveExact(1000000);
+    SolverResult beam = solver.solveBeam(8, 50);
+    for (int move : exact.moves) {
+      engine.applyMove(move);
+    }
+    return t.checkExpect(exact.optimal, true) && t.checkExpect(engine.isWon(), true)
+        && t.checkExpect(bound <= exact.moves.length, true)
+        && t.checkExpect(exact.moves.length <= beam.moves.length, true);
+  }
+
+  // test the beam solver wins from the middle of a live game
+  boolean testSolveBeamLive(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    this.world4.floodBoardCellsColor(new Cell(0, 0, this.world4.colorList.get(2)));
+    SolverResult beam = this.world4.solver().solveBeam(16, 20);
+    for (int move : beam.moves) {
+      this.world4.engine.playColor(move);
+    }
+    return t.checkExpect(this.world4.engine.isWon(), true)
+        && t.checkExpect(beam.firstMove() >= 0, true)
+        && t.checkExpect(new FloodSolver(this.world4.engine).solveBeam(4, 0).firstMove(), -1);
+  }
+
+  // test positions of more regions than a snapshot takes on are refused
+  // rather than allocated
+  boolean testSolverRegionLimit(Tester t) {
+    FloodIt big = new FloodIt(100, 6, 2);
+    big.makeBoard();
+    return t.checkExpect(big.regionsLeft() > RegionSnapshot.MAX_REGIONS, true)
+        && t.checkConstructorException(
+            new IllegalArgumentException("A position of more than 4096 regions is too large"
+                + " to solve."), "floodit.FloodSolver", big.engine)
+        && t.checkException(new IllegalArgumentException("A position of more than 4096 regions"
+            + " is too large to solve."), big, "solver");
+  }
+
+  // test the parallel search finds a win as short as the exact solver's
+  boolean testSolveParallel(Tester t) {
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(3, 8, 4);
+    SolverResult exact = new FloodSolver(engine).solveExact(1000000);
+    SolverResult parallel = new ParallelFloodSolver(engine, 4, 2).solve(0);
+    for (int move : parallel.moves) {
+      engine.applyMove(move);
+    }
+    return t.checkExpect(parallel.optimal, true)
+        && t.checkExpect(parallel.moves.length, exact.moves.length)
+        && t.checkExpect(engine.isWon(), true)
+        && t.checkExpect(parallel.workers.isEmpty(), false);
+  }
+
+  // test the parallel search refuses a pool without threads
+  boolean testSolveParallelThreads(Tester t) {
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(3, 8, 4);
+    return t.checkConstructorException(
+        new IllegalArgumentException("The parallelism must be at least 1."),
+        "floodit.ParallelFloodSolver", engine, 0, 2);
+  }
+
+  // test the parallel search refuses positions too big for the solvers
+  boolean testSolveParallelRegionLimit(Tester t) {
+    FloodEngine engine = new FloodEngine();
+    engine.newGame(2, 100, 6);
+    return t.checkConstructorException(
+        new IllegalArgumentException("A position of more than 4096 regions is too large"
+            + " to solve."), "floodit.ParallelFloodSolver", engine, 4, 2);
+  }
+
+  // test the engine's hash follows the flooded cells and the flood's color
+  boolean testBoardHash(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    FloodEngine engine = this.world4.engine;
+    long start = engine.hash();
+    RegionSnapshot snapshot = new RegionSnapshot(engine);
+    boolean matches = start == engine.board.keys.hashOf(engine.board)
+        && start == snapshot.startHash();
+    long[] flooded = snapshot.startFlooded();
+    long[] frontier = snapshot.startFrontier();
+    long hash = start;
+    int color = snapshot.floodColor;
+    for (int move = 0; move < 30; move++) {
+      int c = (color + 1 + move % 2) % 7;
+      long[] grown = new long[snapshot.words];
+      long[] next = new long[snapshot.words];
+      snapshot.play(flooded, frontier, c, grown, next);
+      hash = snapshot.hashAfter(hash, flooded, grown, color, c);
+      flooded = grown;
+      frontier = next;
+      color = c;
+      this.world4.floodBoardCellsColor(new Cell(0, 0, this.world4.colorList.get(c)));
+      this.world4.floodBoardCellsColorOnTick();
+      matches = matches && engine.hash() == engine.board.keys.hashOf(engine.board)
+          && engine.hash() == hash;
+    }
+    return t.checkExpect(matches, true) && t.checkExpect(engine.hash() == start, false);
+  }
+
+  // test the transposition table keeps, replaces and forgets entries
+  boolean testTranspositionTable(Tester t) {
+    TranspositionTable table = new TranspositionTable(6);
+    table.put(1L, 10, 5);
+    table.put(3L, 30, 1);
+    table.put(5L, 50, 2);
+    boolean full = table.get(1L) == 10 && table.get(3L) == table.missing
+        && table.get(5L) == 50;
+    table.nextGeneration();
+    return t.checkExpect(table.capacity(), 4) && t.checkExpect(full, true)
+        && t.checkExpect(table.evictions, 1L)
+        && t.checkExpect(table.get(1L), table.missing)
+        && t.checkConstructorException(
+            new IllegalArgumentException("The capacity of the table must be at least 2."),
+            "floodit.TranspositionTable", 1);
+  }
+
+  // test the latency histogram buckets and percentiles
+  boolean testLatencyHistogram(Tester t) {
+    LatencyHistogram histogram = new LatencyHistogram("move");
+    for (int nanos = 1; nanos <= 100; nanos++) {
+      histogram.record(nanos * 1000);
+    }
+    return t.checkExpect(histogram.bucketOf(3), 3) && t.checkExpect(histogram.bucketOf(4), 4)
+        && t.checkExpect(histogram.bucketOf(15), 11) && t.checkExpect(histogram.bucketOf(16), 12)
+        && t.checkExpect(histogram.bucketStart(11), 14L)
+        && t.checkExpect(histogram.bucketStart(histogram.bucketOf(123456789)) <= 123456789L,
+            true)
+        && t.checkExpect(histogram.count, 100L) && t.checkExpect(histogram.max, 100000L)
+        && t.checkExpect(Math.abs(histogram.percentile(50) - 50000) < 12500, true)
+        && t.checkExpect(histogram.percentile(100), 100000L)
+        && t.checkInexact(histogram.mean(), 50500.0, 0.001);
+  }
+
+  // test the metrics follow the ticks, frames and moves of a game once on
+  boolean testFloodMetrics(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    this.world4.onTick();
+    boolean quiet = this.world4.metrics == null && this.world4.engine.metrics == null;
+    FloodMetrics metrics = this.world4.enableMetrics();
+    int flooded = this.world4.board.flooded.cardinality();
+    for (int move = 0; move < 5; move++) {
+      this.world4.floodBoardCellsColor(new Cell(0, 0, this.world4.colorList.get(move % 7)));
+      this.world4.onTick();
+      this.world4.renderGame();
+    }
+    return t.checkExpect(quiet, true) && t.checkExpect(this.world4.enableMetrics(), metrics)
+        && t.checkExpect(metrics.ticks.count, 5L) && t.checkExpect(metrics.renders.count, 5L)
+        && t.checkExpect(metrics.moves.count > 0, true)
+        && t.checkExpect(metrics.histogram("expand"), metrics.expansions)
+        && t.checkExpect(metrics.cellsCaptured,
+            (long) this.world4.board.flooded.cardinality() - flooded)
+        && t.checkExpect(metrics.cellsScanned >= metrics.cellsCaptured, true);
+  }
+
+  // test idle ticks touch nothing and back off, while moves are played the
+  // moment they come and wake the ticks up again
+  boolean testIdleTicks(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    FloodMetrics metrics = this.world4.enableMetrics();
+    long scanned = this.world4.board.fill.scanned();
+    for (int tick = 0; tick < 40; tick++) {
+      this.world4.onTick();
+    }
+    boolean idle = this.world4.board.fill.scanned() == scanned
+        && this.world4.tickStride == this.world4.maxTickStride && metrics.ticks.count < 40;
+    int flood = this.world4.engine.floodColor();
+    this.world4.queueMove((flood + 1) % 7);
+    this.world4.queueMove((flood + 2) % 7);
+    boolean woken = this.world4.tickStride == 1;
+    this.world4.onTick();
+    return t.checkExpect(idle, true) && t.checkExpect(woken, true)
+        && t.checkExpect(this.world4.engine.movesMade, 2)
+        && t.checkExpect(this.world4.engine.floodColor(), (flood + 2) % 7)
+        && t.checkExpect(this.world4.engine.cellsBehind, false)
+        && t.checkExpect(this.world4.pendingMoves.size(), 0)
+        && t.checkExpect(this.world4.board.flooded.cardinality(), this.world4.engine.floodedCount);
+  }
+
+  // test a capture spread over ticks as a wave does bounded work per tick and
+  // ends with the same cells flooded as catching up at once, even when the
+  // next move comes before the wave is done
+  boolean testFloodWave(Tester t) {
+    FloodIt wave = new FloodIt(120, 3, 7);
+    FloodIt instant = new FloodIt(120, 3, 7);
+    wave.makeBoard();
+    instant.makeBoard();
+    wave.waveBudget = 200;
+    boolean bounded = true;
+    boolean same = true;
+    int ticks = 0;
+    for (int move = 0; move < 30; move++) {
+      int color = move % 3 == wave.engine.floodColor() ? (move + 1) % 3 : move % 3;
+      wave.queueMove(color);
+      wave.playPendingMoves();
+      instant.queueMove(color);
+      instant.onTick();
+      // every third move only gets one tick before the next one comes
+      int allowed = move % 3 == 2 ? 1 : Integer.MAX_VALUE;
+      for (int tick = 0; tick < allowed && wave.engine.cellsBehind; tick++) {
+        long scanned = wave.board.fill.scanned();
+        wave.onTick();
+        bounded = bounded && wave.board.fill.scanned() - scanned <= 203;
+        ticks++;
+      }
+      same = same && (wave.engine.cellsBehind
+          || wave.board.flooded.equals(instant.board.flooded));
+    }
+    while (wave.engine.cellsBehind) {
+      wave.onTick();
+    }
+    return t.checkExpect(bounded, true) && t.checkExpect(same, true)
+        && t.checkExpect(ticks > 24, true)
+        && t.checkExpect(wave.board.flooded.equals(instant.board.flooded), true)
+        && t.checkExpect(wave.engine.floodedCount, instant.engine.floodedCount);
+  }
+
+  // test taking moves back restores every count, bit and hash they changed,
+  // and that a game carried on after an undo matches one that never made them
+  boolean testUndoRedo(Tester t) {
+    FloodEngine engine = new FloodEngine(21, 90, 4);
+    FloodEngine straight = new FloodEngine(21, 90, 4);
+    engine.makeBoard();
+    straight.makeBoard();
+    ArrayList<BitSet> flooded = new ArrayList<BitSet>();
+    ArrayList<String> counts = new ArrayList<String>();
+    boolean same = true;
+    for (int move = 0; move < 12; move++) {
+      flooded.add((BitSet) engine.board.flooded.clone());
+      counts.add(Arrays.toString(engine.colorCounts) + engine.hash() + engine.regions.regionsLeft);
+      engine.applyMove((engine.floodColor() + 1 + move % 3) % 4);
+      engine.syncCells();
+    }
+    int capturedAll = engine.floodedCount;
+    for (int move = 11; move >= 6; move--) {
+      engine.undo();
+      same = same && engine.board.flooded.equals(flooded.get(move))
+          && counts.get(move).equals(Arrays.toString(engine.colorCounts) + engine.hash()
+              + engine.regions.regionsLeft);
+    }
+    for (int move = 6; move < 12; move++) {
+      engine.redo();
+    }
+    engine.syncCells();
+    boolean redone = engine.floodedCount == capturedAll && engine.movesMade == 12;
+    for (int move = 0; move < 7; move++) {
+      engine.undo();
+    }
+    for (int k = 0; k < engine.history.size(); k++) {
+      straight.applyMove(engine.history.get(k).color);
+    }
+    for (int move = 0; move < 10; move++) {
+      int color = (engine.floodColor() + 2 + move % 2) % 4;
+      engine.applyMove(color);
+      straight.applyMove(color);
+    }
+    engine.syncCells();
+    straight.syncCells();
+    return t.checkExpect(same, true) && t.checkExpect(redone, true)
+        && t.checkExpect(engine.undone.size(), 0)
+        && t.checkExpect(engine.board.flooded, straight.board.flooded)
+        && t.checkExpect(engine.colorCounts, straight.colorCounts)
+        && t.checkExpect(engine.hash(), straight.hash())
+        && t.checkExpect(engine.movesMade, straight.movesMade)
+        && t.checkExpect(engine.redo(), false);
+  }
+
+  // test a game played without ever looking at the cells, on bitboards and
+  // on the frontier, undoes back to exactly the cells it was dealt with
+  boolean testHeadlessUndo(Tester t) {
+    boolean same = true;
+    for (int size : new int[] { 14, 90 }) {
+      FloodEngine engine = new FloodEngine(8, size, 4);
+      engine.makeBoard();
+      BitSet dealt = (BitSet) engine.board.flooded.clone();
+      int move = 0;
+      while (!engine.isWon() && engine.applyMove((engine.floodColor() + 1 + move % 3) % 4)) {
+        move++;
+      }
+      while (engine.undo()) {
+        move--;
+      }
+      same = same && move == 0 && engine.board.flooded.equals(dealt)
+          && engine.board.flooded.cardinality() == engine.regions.floodedCells;
+    }
+    return t.checkExpect(same, true);
+  }
+
+  // test the keys take back a move on a small board and make it again
+  boolean testUndoKeys(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    BitSet before = (BitSet) this.world4.board.flooded.clone();
+    int color = this.world4.engine.floodColor();
+    this.world4.queueMove((color + 3) % 7);
+    this.world4.onTick();
+    BitSet after = (BitSet) this.world4.board.flooded.clone();
+    this.world4.onKeyEvent("u");
+    boolean undone = this.world4.board.flooded.equals(before)
+        && this.world4.engine.floodColor() == color && this.world4.engine.movesMade == 0;
+    this.world4.onKeyEvent("y");
+    this.world4.onTick();
+    return t.checkExpect(undone, true) && t.checkExpect(this.world4.board.flooded, after)
+        && t.checkExpect(this.world4.engine.movesMade, 1)
+        && t.checkExpect(this.world4.undoMove(), true) && t.checkExpect(this.world4.undoMove(),
+            false);
+  }
+
+  // test the hint is found off the world's thread, refines to a proven line,
+  // and its search is dropped the moment a click moves the game on
+  boolean testHint(Tester t) {
+    initWorld();
+    this.world4.makeBoard();
+    this.world4.onKeyEvent("h");
+    long position = this.world4.engine.hash();
+    Hint hint = waitForHint(this.world4, position);
+    SolverResult exact = this.world4.solver().solveExact(1L << 24);
+    double top = 480 - (480 + this.world4.triesImage().getHeight()) / 2;
+    Posn click = new Posn(0, 0);
+    for (int x = 0; x < 12; x++) {
+      for (int y = 0; y < 12; y++) {
+        if (this.world4.board.isAdjacentToFlooded(this.world4.board.index(x, y))
+            && !this.world4.board.isFlooded(this.world4.board.index(x, y))) {
+          click = new Posn(240 + x * 40 + 20, (int) top + y * 40 + 20);
+        }
+      }
+    }
+    HintJob first = this.world4.hints.job;
+    this.world4.onMouseClicked(click);
+    boolean stale = first.cancelled && this.world4.engine.hash() != position
+        && this.world4.hints.job != first;
+    Hint next = waitForHint(this.world4, this.world4.engine.hash());
+    int moves = this.world4.engine.movesMade;
+    long before = this.world4.engine.hash();
+    int floodColor = this.world4.engine.floodColor();
+    this.world4.onKeyEvent("r");
+    boolean dealtFor = this.world4.hints.job.position == this.world4.engine.hash();
+    Hint fresh = waitForHint(this.world4, this.world4.engine.hash());
+    this.world4.onKeyEvent("h");
+    boolean off = this.world4.hints.job == null;
+    this.world4.hints.shutdown();
+    return t.checkExpect(hint.optimal, true)
+        && t.checkExpect(hint.movesToWin, exact.moves.length)
+        && t.checkExpect(moves, 1) && t.checkExpect(stale, true)
+        && t.checkExpect(next.position, before)
+        && t.checkExpect(next.color != floodColor, true)
+        && t.checkExpect(dealtFor, true) && t.checkExpect(fresh == null, false)
+        && t.checkExpect(off, true);
+  }
+
+  // test a position with more regions than the searches take on gets its
+  // greedy hint at once, with no job and no copy of the graph
+  boolean testHintOverLimit(Tester t) {
+    FloodEngine engine = new FloodEngine(3, 100, 6);
+    engine.makeBoard();
+    HintService hints = new HintService();
+    hints.request(engine);
+    Hint hint = hints.current(engine.hash());
+    long[] gains = new GameView(engine).gains();
+    boolean greediest = true;
+    for (long gain : gains) {
+      greediest = greediest && gain <= gains[hint.color];
+    }
+    return t.checkExpect(engine.regions.regionsLeft > RegionSnapshot.MAX_REGIONS, true)
+        && t.checkExpect(hints.job, null) && t.checkExpect(hints.executor, null)
+        && t.checkExpect(hint.optimal, false) && t.checkExpect(greediest, true);
+  }
+
+  // the proven hint for the given position of the given world, waiting for
+  // the search up to a minute
+  Hint waitForHint(FloodIt world, long position) {
+    for (int wait = 0; wait < 6000; wait++) {
+      Hint hint = world.hints.current(position);
+      if (hint != null && hint.optimal) {
+        return hint;
+      }
+      try {
+        Thread.sleep(10);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+    return world.hints.current(position);
+  }
+
+  // test calibrated move limits are tighter than the default but never below
+  // a shortest win, come out the same on any number of threads, and fall back
+  // to the default when no playout finishes in time
+  boolean testCalibratedMoveLimit(Tester t) {
+    FloodEngine engine = new FloodEngine(17, 14, 6);
+    engine.calibrator = new MoveLimitCalibrator();
+    engine.calibrator.budgetMillis = 0;
+    engine.calibrator.maxPlayouts = 300;
+    engine.makeBoard();
+    int limit = engine.moveLimit;
+    int shortest = new FloodSolver(engine).solveExact(1L << 24).moves.length;
+    FloodEngine alone = new FloodEngine(17, 14, 6);
+    alone.calibrator = new MoveLimitCalibrator();
+    alone.calibrator.budgetMillis = 0;
+    alone.calibrator.maxPlayouts = 300;
+    alone.calibrator.parallelism = 1;
+    alone.makeBoard();
+    FloodEngine huge = new FloodEngine(17, 600, 6);
+    huge.calibrator = new MoveLimitCalibrator();
+    huge.calibrator.budgetMillis = 1;
+    huge.makeBoard();
+    initWorld();
+    this.world4.calibrateMoveLimits();
+    this.world4.makeBoard();
+    return t.checkExpect(engine.calibrator.lengths.length, 300)
+        && t.checkExpect(limit >= shortest, true) && t.checkExpect(limit < 14 * 14 - 14, true)
+        && t.checkExpect(alone.moveLimit, limit)
+        && t.checkExpect(alone.calibrator.lengths, engine.calibrator.lengths)
+        && t.checkExpect(huge.moveLimit, 600 * 600 - 600)
+        && t.checkExpect(this.world4.engine.moveLimit < 12 * 12 - 12, true);
+  }
+
+  // test every strategy wins every board of a tournament, the same way on any
+  // number of threads, and loses them all when the moves run out
+  boolean testTournament(Tester t) {
+    ArrayList<IFloodStrategy> strategies = new ArrayList<IFloodStrategy>();
+    strategies.add(new GreedyAreaStrategy());
+    strategies.add(new GreedyFrontierStrategy());
+    strategies.add(new LookaheadStrategy(2));
+    strategies.add(new SolverStrategy(8));
+    Tournament tournament = new Tournament(strategies, 30, 8, 9, 4);
+    ArrayList<StrategyReport> reports = tournament.run();
+    Tournament alone = new Tournament(strategies, 30, 8, 9, 4);
+    alone.parallelism = 1;
+    alone.run();
+    Tournament limited = new Tournament(strategies, 30, 8, 9, 4);
+    limited.moveLimit = 3;
+    StrategyReport lost = limited.run().get(0);
+    FloodEngine big = new FloodEngine(2, 100, 6);
+    big.makeBoard();
+    GameView bigView = new GameView(big);
+    boolean allWon = true;
+    for (StrategyReport report : reports) {
+      allWon = allWon && report.winRate() == 1.0 && report.decisions > 0
+          && report.percentileMoves(50) <= report.percentileMoves(90);
+    }
+    return t.checkExpect(reports.size(), 4) && t.checkExpect(allWon, true)
+        && t.checkExpect(reports.get(3).name, "solver-beam-8")
+        && t.checkExpect(reports.get(3).meanMoves() <= reports.get(0).meanMoves(), true)
+        && t.checkExpect(alone.moves, tournament.moves)
+        && t.checkExpect(lost.wins, 0) && t.checkExpect(lost.percentileMoves(50), -1)
+        && t.checkExpect(limited.moves[0][0], 3)
+        && t.checkExpect(new SolverStrategy(2).chooseColor(bigView),
+            new GreedyAreaStrategy().chooseColor(bigView))
+        && t.checkConstructorException(
+            new IllegalArgumentException("The lookahead depth must be at least 1."),
+            "floodit.LookaheadStrategy", 0);
+  }
+
+  // test the view a strategy gets is exact before the cells catch up, and
+  // shows the same board as the cells once they have
+  boolean testGameView(Tester t) {
+    FloodEngine engine = new FloodEngine(6, 12, 5);
+    engine.makeBoard();
+    GameView view = new GameView(engine);
+    engine.applyMove(new GreedyAreaStrategy().chooseColor(view));
+    engine.applyMove(new LookaheadStrategy(2).chooseColor(view));
+    int flooded = 0;
+    for (int x = 0; x < 12; x++) {
+      for (int y = 0; y < 12; y++) {
+        if (view.isFlooded(x, y)) {
+          flooded++;
+        }
+      }
+    }
+    boolean same = flooded == engine.floodedCount;
+    engine.syncCells();
+    for (int x = 0; x < 12; x++) {
+      for (int y = 0; y < 12; y++) {
+        int index = engine.board.index(x, y);
+        same = same && view.colorIndexAt(x, y) == engine.board.colorIndexAt(index)
+            && view.isFlooded(x, y) == engine.board.isFlooded(index);
+      }
+    }
+    int stamp = engine.regions.stamp;
+    int[] parent = engine.regions.parent.clone();
+    long[] gains = view.gains();
+    return t.checkExpect(same, true) && t.checkExpect(view.floodedCount(), engine.floodedCount)
+        && t.checkExpect(engine.regions.stamp, stamp)
+        && t.checkExpect(engine.regions.parent, parent)
+        && t.checkExpect(view.regionsLeft(), engine.regions.regionsLeft)
+        && t.checkExpect(gains[view.floodColor()], 0L) && t.checkExpect(view.movesMade(), 2);
+  }
+
+  // test a puzzle file written over several batches, capped by bytes, and
+  // through a cell buffer smaller than one board reads back, by id and in any
+  // order, the boards, seeds and solver move counts the engine gets
+  boolean testPuzzleCorpus(Tester t) {
+    Path path;
+    PuzzleFile file;
+    CorpusGenerator generator = new CorpusGenerator(1000, 10, 5);
+    generator.batchSize = 16;
+    generator.maxBatchBytes = 700;
+    generator.cellBufferBytes = 16;
+    generator.playouts = 16;
+    try {
+      path = Files.createTempFile("floodit", ".puzzles");
+      path.toFile().deleteOnExit();
+      generator.write(path, 40);
+      file = new PuzzleFile(path);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    boolean same = true;
+    for (int id = 39; id >= 0; id -= 7) {
+      FloodEngine dealt = new FloodEngine();
+      dealt.newGame(1000 + id, 10, 5);
+      FloodEngine loaded = new FloodEngine();
+      file.load(id, loaded);
+      same = same && file.seed(id) == 1000 + id && file.size(id) == 10 && file.colors(id) == 5
+          && Arrays.equals(loaded.board.colors, dealt.board.colors)
+          && loaded.boardSeed == dealt.boardSeed && loaded.palette.rgb(4) == dealt.palette.rgb(4)
+          && loaded.floodedCount == dealt.floodedCount
+          && file.moves(id) == new FloodSolver(dealt).solveExact(1 << 16).moves.length
+          && file.optimal(id) && !Float.isNaN(file.difficulty(id));
+    }
+    // a second file, since a file with mapped pieces open cannot be written
+    // on every platform
+    Path junk;
+    try {
+      junk = Files.createTempFile("floodit", ".junk");
+      junk.toFile().deleteOnExit();
+      Files.write(junk, new byte[128]);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return t.checkExpect(file.count(), 40L) && t.checkExpect(same, true)
+        && t.checkConstructorException(
+            new IllegalArgumentException("The file is not a puzzle file."), "floodit.PuzzleFile",
+            junk);
+  }
+
+  // test games deal the same boards from the same seed, on any number of threads
+  boolean testSeededDeal(Tester t) {
+    FloodEngine engine = new FloodEngine(11, 300, 6);
+    engine.makeBoard();
+    byte[] first = engine.board.colors.clone();
+    long boardSeed = engine.boardSeed;
+    FloodEngine alone = new FloodEngine(11, 300, 6);
+    alone.dealGrain = Integer.MAX_VALUE;
+    alone.makeBoard();
+    engine.reset();
+    boolean different = !Arrays.equals(first, engine.board.colors);
+    engine.deal(boardSeed);
+    FloodIt world = new FloodIt(5, 4, 99);
+    world.makeBoard();
+    FloodIt again = new FloodIt(5, 4, world.seed());
+    again.makeBoard();
+    return t.checkExpect(alone.board.colors, first) && t.checkExpect(different, true)
+        && t.checkExpect(engine.board.colors, first)
+        && t.checkExpect(again.renderBoardText(), world.renderBoardText())
+        && t.checkExpect(again.boardSeed(), world.boardSeed());
+  }
+
+  // test games of up to 256 colors name and compare them through the palette
+  boolean testWidePalette(Tester t) {
+    FloodIt world = new FloodIt(40, 256, 3);
+    world.makeColors();
+    world.makeBoard();
+    world.makeBoard();
+    ColorTable table = Palette.TABLE;
+    Palette palette = world.colorList;
+    int named = 0;
+    for (int k = 0; k < palette.size(); k++) {
+      if (!palette.name(k).startsWith("#")) {
+        named++;
+      }
+    }
+    Cell corner = world.cellAt(0, 0);
+    Cell copy = new Cell(7, 7, corner.getColor());
+    boolean same = corner.sameColor(copy) && world.areCellsSameColor(copy, corner);
+    world.floodBoardCellsColor(new Cell(0, 0, palette.get(200)));
+    world.floodBoardCellsColorOnTick();
+    return t.checkExpect(palette.size(), 256) && t.checkExpect(named, 8)
+        && t.checkExpect(world.util.table == Palette.TABLE, true)
+        && t.checkExpect(palette.indexOf(palette.get(255)), 255)
+        && t.checkExpect(util.getColor(table.colors[8]), table.names[8])
+        && t.checkExpect(util.getColor(new Color(1, 2, 3)), "Unknown Color")
+        && t.checkExpect(same, true)
+        && t.checkExpect(world.areCellsSameColor(corner, copy), false)
+        && t.checkExpect(world.cellAt(0, 0).colorIndex(), 200)
+        && t.checkExpect(world.cellAt(0, 0).getCellInfo(),
+            "Cell[(0,0) " + palette.name(200) + "]");
+  }
+
+  // test the board streams out as text and in the compact layout
+  boolean testBoardTextWriter(Tester t) {
+    initWorld();
+    this.world1.makeBoard();
+    this.world3.makeBoard();
+    BoardTextWriter writer = new BoardTextWriter(this.world3.board);
+    writer.buffer = new char[7];
+    writer.view = CharBuffer.wrap(writer.buffer);
+    writer.bytes = ByteBuffer.allocate(7);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    StringWriter text = new StringWriter();
+    StringBuilder compact = new StringBuilder();
+    try {
+      writer.writeText(Channels.newChannel(bytes));
+      writer.writeText(text);
+      new BoardTextWriter(this.world1.board).writeCompact(compact);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return t.checkExpect(bytes.toString(), this.world3.renderBoardText())
+        && t.checkExpect(text.toString(), this.world3.renderBoardText())
+        && t.checkExpect(writer.textLengthBound() >= text.toString().length(), true)
+        && t.checkExpect(compact.toString(), "floodit 2 3\nffafaf 0000ff ff0000\n00\n21\n");
+  }
+
+  // test a huge chunked board only deals the chunks in play, and deals a
+  // dropped chunk again exactly as it was
+  boolean testChunkedBoardLazy(Tester t) {
+    ChunkedBoard board = new ChunkedBoard(3, 100000, 6, 8, new ChunkStore(73728, 16));
+    board.maxCleanChunks = 4;
+    ChunkedFlood flood = new ChunkedFlood(board);
+    flood.reset();
+    flood.play((flood.floodColor() + 1) % 6);
+    int corner = board.colorIndexAt(99999, 99999);
+    int[] view = new int[6];
+    board.readView(99998, 99998, 3, 2, view);
+    for (long x = 0; x < 100000; x += 5000) {
+      board.colorIndexAt(x, 50000);
+    }
+    boolean dropped = !board.chunks.containsKey(board.chunkKey(390, 390));
+    int dealt = board.residentChunks();
+    boolean ok = t.checkExpect(dropped, true)
+        && t.checkExpect(dealt <= board.maxCleanChunks + 2, true)
+        && t.checkExpect(board.evictions > 0, true)
+        && t.checkExpect(board.colorIndexAt(99999, 99999), corner)
+        && t.checkExpect(view[4], board.palette.rgb(corner)) && t.checkExpect(view[2], 0)
+        && t.checkExpect(board.isFlooded(0, 0), true)
+        && t.checkExpect(board.store.reservedBytes() < 16L * 73728 * 2, true);
+    try {
+      board.close();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return ok && t.checkConstructorException(
+        new IllegalArgumentException("The chunks must be between 3 and 12 bits wide."),
+        "floodit.ChunkedBoard", 3L, 100L, 6, 2, new ChunkStore(80, 1));
+  }
+
+  // test a chunked board, mapped from a file and short of room for its
+  // chunks, floods the same cells as the engine on the same colors
+  boolean testChunkedFlood(Tester t) {
+    Path path;
+    ChunkedBoard board;
+    try {
+      path = Files.createTempFile("floodit", ".chunks");
+      board = new ChunkedBoard(8, 40, 5, 3, new ChunkStore(72, 4, path));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    board.maxCleanChunks = 2;
+    FloodEngine engine = new FloodEngine(1, 40, 5);
+    engine.makeBoard();
+    for (int x = 0; x < 40; x++) {
+      for (int y = 0; y < 40; y++) {
+        engine.board.colors[engine.board.index(x, y)] = (byte) board.storedColorIndexAt(x, y);
+      }
+    }
+    engine.startFlood();
+    ChunkedFlood flood = new ChunkedFlood(board);
+    boolean same = flood.reset() == engine.floodedCount;
+    SplittableRandom moves = new SplittableRandom(4);
+    while (!engine.isWon()) {
+      int color = moves.nextInt(5);
+      engine.applyMove(color);
+      flood.play(color);
+      same = same && flood.floodedCount == engine.floodedCount;
+    }
+    engine.syncCells();
+    for (int index = 0; index < engine.board.cellCount(); index++) {
+      same = same && board.isFlooded(index / 40, index % 40);
+    }
+    try {
+      board.close();
+      Files.delete(path);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return t.checkExpect(same, true) && t.checkExpect(flood.isWon(), true)
+        && t.checkExpect(board.evictions > 0, true);
+  }
 }
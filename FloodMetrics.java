@@ -0,0 +1,178 @@
+package floodit;
+
+import java.util.ArrayList;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// represents the timings of a running game, one latency histogram per kind of
+// work. A game keeps none until metrics are switched on, so a game nobody
+// watches pays one null check per tick, render and move. Everything is
+// recorded from the thread that runs the world, so nothing here is locked
+class FloodMetrics {
+  ArrayList<LatencyHistogram> histograms = new ArrayList<LatencyHistogram>();
+  LatencyHistogram ticks = register("tick");
+  LatencyHistogram renders = register("render");
+  LatencyHistogram moves = register("move");
+  LatencyHistogram expansions = register("expand");
+
+  // cells looked at and cells captured by all expansions so far
+  long cellsScanned = 0;
+  long cellsCaptured = 0;
+
+  // adds a histogram under the given name
+  LatencyHistogram register(String name) {
+    LatencyHistogram histogram = new LatencyHistogram(name);
+    this.histograms.add(histogram);
+    return histogram;
+  }
+
+  // the histogram of the given name, or null if there is none
+  LatencyHistogram histogram(String name) {
+    for (LatencyHistogram histogram : this.histograms) {
+      if (histogram.name.equals(name)) {
+        return histogram;
+      }
+    }
+    return null;
+  }
+
+  // one line per histogram that has seen anything, then the cell counts
+  String report() {
+    StringBuilder report = new StringBuilder();
+    for (LatencyHistogram histogram : this.histograms) {
+      if (histogram.count > 0) {
+        report.append(histogram).append("\n");
+      }
+    }
+    report.append("cells scanned ").append(this.cellsScanned).append(", captured ")
+        .append(this.cellsCaptured).append("\n");
+    return report.toString();
+  }
+}
+
+// represents the spread of a latency in nanoseconds, in buckets that split
+// every power of two in four, so any value is known to within 25% in a fixed
+// 2KB whatever the range
+class LatencyHistogram {
+  String name;
+  long[] counts = new long[256];
+  long count = 0;
+  long total = 0;
+  long max = 0;
+
+  LatencyHistogram(String name) {
+    this.name = name;
+  }
+
+  // adds one latency
+  void record(long nanos) {
+    long value = Math.max(0, nanos);
+    this.counts[bucketOf(value)]++;
+    this.count++;
+    this.total += value;
+    this.max = Math.max(this.max, value);
+  }
+
+  // the bucket holding the given value: values under 4 get one each, and every
+  // later power of two is split by the two bits under its top bit
+  int bucketOf(long value) {
+    if (value < 4) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    return (exponent - 1) * 4 + (int) ((value >>> (exponent - 2)) & 3);
+  }
+
+  // the smallest value in the given bucket
+  long bucketStart(int bucket) {
+    if (bucket < 4) {
+      return bucket;
+    }
+    return (long) (4 + bucket % 4) << (bucket / 4 - 1);
+  }
+
+  // the latency that the given percentage of records are at or under, to
+  // within its bucket
+  long percentile(double percent) {
+    long rank = (long) Math.ceil(percent / 100 * this.count);
+    long seen = 0;
+    for (int bucket = 0; bucket < this.counts.length; bucket++) {
+      seen += this.counts[bucket];
+      if (seen >= Math.max(1, rank)) {
+        return Math.min(this.max, bucketStart(bucket + 1) - 1);
+      }
+    }
+    return this.max;
+  }
+
+  // the average latency, 0 before anything is recorded
+  double mean() {
+    if (this.count == 0) {
+      return 0;
+    }
+    return (double) this.total / this.count;
+  }
+
+  public String toString() {
+    return this.name + ": " + this.count + " in " + this.total / 1000 + "us, mean "
+        + (long) mean() / 1000 + "us, p50 " + percentile(50) / 1000 + "us, p99 "
+        + percentile(99) / 1000 + "us, max " + this.max / 1000 + "us";
+  }
+}
+
+// represents one tick of the world, recorded when a flight recording asks for
+// it; the tick captures the cells the last move reached
+@Name("floodit.Tick")
+@Label("Tick")
+@Category("Flood-It")
+@Description("One tick of the world")
+class TickEvent extends Event {
+  @Label("Cells Captured")
+  int cellsCaptured;
+}
+
+// represents one frame of the world being drawn
+@Name("floodit.Render")
+@Label("Render")
+@Category("Flood-It")
+@Description("One frame of the board drawn")
+class RenderEvent extends Event {
+  @Label("Columns Drawn")
+  int columnsDrawn;
+
+  @Label("Board Size")
+  int boardSize;
+}
+
+// represents one color played on the flood
+@Name("floodit.Move")
+@Label("Move")
+@Category("Flood-It")
+@Description("One color played on the flood")
+class MoveEvent extends Event {
+  @Label("Color")
+  int color;
+
+  @Label("Regions Merged")
+  int regionsMerged;
+
+  @Label("Cells Flooded")
+  int cellsFlooded;
+}
+
+// represents the flooded cells catching up with the moves made
+@Name("floodit.FloodExpansion")
+@Label("Flood Expansion")
+@Category("Flood-It")
+@Description("The flooded cells catching up with the last move")
+class FloodExpansionEvent extends Event {
+  @Label("Cells Scanned")
+  long cellsScanned;
+
+  @Label("Cells Captured")
+  int cellsCaptured;
+}
@@ -0,0 +1,564 @@
+package floodit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+// represents a frozen copy of a game's regions, small enough to search over:
+// region 0 is the flood and every other region is an unflooded group of
+// same-colored cells. Sets of regions are bit masks of `words` longs
+class RegionSnapshot {
+  // the most regions a snapshot takes on: it keeps a bit per pair of regions,
+  // so memory grows with the square of their number. Every caller that might
+  // meet a bigger position checks against this one limit
+  static final int MAX_REGIONS = 4096;
+
+  int regionCount;
+  int words;
+  int colorCount;
+  int[] color;
+  int[] cells;
+  // adjacent[r] is the set of regions touching region r
+  long[][] adjacent;
+  // ofColor[c] is the set of regions of palette color c
+  long[][] ofColor;
+  int floodColor;
+  // the Zobrist key of every region, and the keys they are drawn from
+  long[] key;
+  ZobristKeys keys;
+
+  // scratch space for lowerBound, so it allocates nothing per call
+  long[] scratchSeen;
+  long[] scratchLayer;
+  long[] scratchNext;
+  boolean[][] layerHasColor;
+  boolean[] scratchColorSeen;
+
+  // constructor for a copy that shares the regions of the given snapshot but
+  // has scratch space of its own, so another thread can search it
+  RegionSnapshot(RegionSnapshot shared) {
+    this.regionCount = shared.regionCount;
+    this.words = shared.words;
+    this.colorCount = shared.colorCount;
+    this.color = shared.color;
+    this.cells = shared.cells;
+    this.adjacent = shared.adjacent;
+    this.ofColor = shared.ofColor;
+    this.floodColor = shared.floodColor;
+    this.key = shared.key;
+    this.keys = shared.keys;
+    allocateScratch();
+  }
+
+  // takes a snapshot of the regions of the given game as it stands now
+  RegionSnapshot(FloodEngine engine) {
+    this(engine.regions, engine.palette.size(), engine.board.keys);
+  }
+
+  // takes a snapshot of the given region graph, whose regions have colors out
+  // of colorCount and keys drawn from keys; refuses positions of more than
+  // MAX_REGIONS regions before allocating anything
+  RegionSnapshot(RegionGraph graph, int colorCount, ZobristKeys keys) {
+    if (graph.regionsLeft > MAX_REGIONS) {
+      throw new IllegalArgumentException(
+          "A position of more than " + MAX_REGIONS + " regions is too large to solve.");
+    }
+    int[] id = new int[graph.regionCount];
+    Arrays.fill(id, -1);
+    id[graph.floodRoot] = 0;
+    int next = 1;
+    for (int r = 0; r < graph.regionCount; r++) {
+      if (graph.find(r) == r && r != graph.floodRoot) {
+        id[r] = next;
+        next++;
+      }
+    }
+    this.regionCount = next;
+    this.words = (next + 63) / 64;
+    this.colorCount = colorCount;
+    this.color = new int[next];
+    this.cells = new int[next];
+    this.adjacent = new long[next][this.words];
+    this.ofColor = new long[this.colorCount][this.words];
+    this.key = new long[next];
+    this.keys = keys;
+    for (int r = 0; r < graph.regionCount; r++) {
+      int a = id[graph.find(r)];
+      if (graph.find(r) == r) {
+        this.color[a] = graph.color[r];
+        this.key[a] = graph.key[r];
+        setBit(this.ofColor[graph.color[r]], a);
+      }
+      this.cells[a] += graph.cellCount[r];
+      for (int k = graph.adjStart[r]; k < graph.adjEnd[r]; k++) {
+        int b = id[graph.find(graph.adjEdges[k])];
+        if (a != b) {
+          setBit(this.adjacent[a], b);
+          setBit(this.adjacent[b], a);
+        }
+      }
+    }
+    // the flood's cells were counted once per region merged into it
+    this.cells[0] = graph.floodedCells;
+    this.floodColor = graph.floodColor();
+    allocateScratch();
+  }
+
+  // makes the scratch space for lowerBound
+  void allocateScratch() {
+    this.scratchSeen = new long[this.words];
+    this.scratchLayer = new long[this.words];
+    this.scratchNext = new long[this.words];
+    this.layerHasColor = new boolean[this.regionCount][this.colorCount];
+    this.scratchColorSeen = new boolean[this.colorCount];
+  }
+
+  // adds region r to the given set
+  void setBit(long[] set, int r) {
+    set[r >>> 6] |= 1L << r;
+  }
+
+  // checks if region r is in the given set
+  boolean hasBit(long[] set, int r) {
+    return (set[r >>> 6] & (1L << r)) != 0;
+  }
+
+  // the set holding only the flood
+  long[] startFlooded() {
+    long[] flooded = new long[this.words];
+    setBit(flooded, 0);
+    return flooded;
+  }
+
+  // the set of regions touching the flood at the start
+  long[] startFrontier() {
+    return this.adjacent[0].clone();
+  }
+
+  // the hash of the position the snapshot was taken at, the same as the
+  // engine's hash there
+  long startHash() {
+    return this.key[0] ^ this.keys.colorKey(this.floodColor);
+  }
+
+  // the hash after a move from color from to color to grew the flood from
+  // flooded to grown, given the hash before it
+  long hashAfter(long hash, long[] flooded, long[] grown, int from, int to) {
+    hash ^= this.keys.colorKey(from) ^ this.keys.colorKey(to);
+    for (int w = 0; w < this.words; w++) {
+      long bits = grown[w] & ~flooded[w];
+      while (bits != 0) {
+        hash ^= this.key[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return hash;
+  }
+
+  // checks if the flood of color c would grow from the given frontier
+  boolean captures(long[] frontier, int c) {
+    long[] regions = this.ofColor[c];
+    for (int w = 0; w < this.words; w++) {
+      if ((frontier[w] & regions[w]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // number of cells the flood of color c would take from the given frontier
+  int gain(long[] frontier, int c) {
+    long[] regions = this.ofColor[c];
+    int gained = 0;
+    for (int w = 0; w < this.words; w++) {
+      long bits = frontier[w] & regions[w];
+      while (bits != 0) {
+        gained += this.cells[(w << 6) + Long.numberOfTrailingZeros(bits)];
+        bits &= bits - 1;
+      }
+    }
+    return gained;
+  }
+
+  // plays color c from the given flood and frontier into the out arrays,
+  // returns the number of cells gained
+  int play(long[] flooded, long[] frontier, int c, long[] outFlooded, long[] outFrontier) {
+    long[] regions = this.ofColor[c];
+    int gained = 0;
+    for (int w = 0; w < this.words; w++) {
+      long taken = frontier[w] & regions[w];
+      outFlooded[w] = flooded[w] | taken;
+      outFrontier[w] = frontier[w] & ~taken;
+    }
+    for (int w = 0; w < this.words; w++) {
+      long bits = frontier[w] & regions[w];
+      while (bits != 0) {
+        int r = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        gained += this.cells[r];
+        long[] touching = this.adjacent[r];
+        for (int v = 0; v < this.words; v++) {
+          outFrontier[v] |= touching[v];
+        }
+      }
+    }
+    for (int w = 0; w < this.words; w++) {
+      outFrontier[w] &= ~outFlooded[w];
+    }
+    return gained;
+  }
+
+  // checks if nothing is left outside the flood
+  boolean isWon(long[] frontier) {
+    for (int w = 0; w < this.words; w++) {
+      if (frontier[w] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // number of colors still showing outside the flood; each needs a move
+  int colorsLeft(long[] flooded) {
+    int left = 0;
+    for (int c = 0; c < this.colorCount; c++) {
+      long[] regions = this.ofColor[c];
+      for (int w = 0; w < this.words; w++) {
+        if ((regions[w] & ~flooded[w]) != 0) {
+          left++;
+          break;
+        }
+      }
+    }
+    return left;
+  }
+
+  // a lower bound on the moves still needed from the given position. A region
+  // k steps from the flood cannot be taken in fewer than k moves, so every
+  // color showing beyond step k still needs a move of its own after the first
+  // k: the bound is the largest k plus the number of colors beyond step k.
+  // With k = 0 this counts the colors left, and with k one short of the
+  // furthest region it is that region's distance
+  int lowerBound(long[] flooded, long[] frontier) {
+    long[] seen = this.scratchSeen;
+    long[] layer = this.scratchLayer;
+    long[] nextLayer = this.scratchNext;
+    int layers = 0;
+    for (int w = 0; w < this.words; w++) {
+      seen[w] = flooded[w] | frontier[w];
+      layer[w] = frontier[w];
+    }
+    // record which colors show on each layer, nearest layer first
+    while (!isWon(layer)) {
+      for (int c = 0; c < this.colorCount; c++) {
+        this.layerHasColor[layers][c] = captures(layer, c);
+      }
+      layers++;
+      Arrays.fill(nextLayer, 0);
+      for (int w = 0; w < this.words; w++) {
+        long bits = layer[w];
+        while (bits != 0) {
+          long[] touching = this.adjacent[(w << 6) + Long.numberOfTrailingZeros(bits)];
+          bits &= bits - 1;
+          for (int v = 0; v < this.words; v++) {
+            nextLayer[v] |= touching[v] & ~seen[v];
+          }
+        }
+      }
+      for (int w = 0; w < this.words; w++) {
+        seen[w] |= nextLayer[w];
+      }
+      long[] swap = layer;
+      layer = nextLayer;
+      nextLayer = swap;
+    }
+    // walk back from the furthest layer, counting the colors beyond each step
+    Arrays.fill(this.scratchColorSeen, false);
+    int colorsBeyond = 0;
+    int bound = 0;
+    for (int k = layers - 1; k >= 0; k--) {
+      for (int c = 0; c < this.colorCount; c++) {
+        if (this.layerHasColor[k][c] && !this.scratchColorSeen[c]) {
+          this.scratchColorSeen[c] = true;
+          colorsBeyond++;
+        }
+      }
+      bound = Math.max(bound, k + colorsBeyond);
+    }
+    return bound;
+  }
+
+  // a color whose remaining regions all touch the flood, or -1; playing such a
+  // color next never makes a solution longer
+  int eliminatingColor(long[] flooded, long[] frontier, int floodColor) {
+    for (int c = 0; c < this.colorCount; c++) {
+      if (c == floodColor || !captures(frontier, c)) {
+        continue;
+      }
+      long[] regions = this.ofColor[c];
+      boolean allTouching = true;
+      for (int w = 0; w < this.words && allTouching; w++) {
+        allTouching = (regions[w] & ~flooded[w] & ~frontier[w]) == 0;
+      }
+      if (allTouching) {
+        return c;
+      }
+    }
+    return -1;
+  }
+}
+
+// represents the outcome of a search: the colors to play in order, whether
+// they are known to be the fewest possible, and what the search cost
+class SolverResult {
+  int[] moves;
+  boolean optimal;
+  long nodes;
+  long nanos;
+  // what each thread of a parallel search did, empty for a single thread
+  ArrayList<SearchStats> workers = new ArrayList<SearchStats>();
+
+  SolverResult(int[] moves, boolean optimal, long nodes, long nanos) {
+    this.moves = moves;
+    this.optimal = optimal;
+    this.nodes = nodes;
+    this.nanos = nanos;
+  }
+
+  // the first color to play, or -1 when the game is already won
+  int firstMove() {
+    if (this.moves.length == 0) {
+      return -1;
+    }
+    return this.moves[0];
+  }
+}
+
+// represents a search for short color sequences that win a game, over a
+// snapshot of its regions. solveExact runs IDA* with an admissible bound built
+// from the colors left and the distance to the furthest region, and proves its
+// answer optimal unless it runs out of nodes; solveBeam keeps the widest
+// floods level by level and always finishes within its time budget
+class FloodSolver {
+  RegionSnapshot snapshot;
+  long nodes = 0;
+  long nodeBudget = 0;
+  boolean outOfBudget = false;
+  // set from another thread to make a running search give up early
+  volatile boolean stopped = false;
+  // per-depth buffers, so the depth-first search allocates nothing per node
+  long[][] floodedAt;
+  long[][] frontierAt;
+  long[] hashAt;
+  int[] path;
+  int solvedDepth = 0;
+  // the shallowest depth each position was searched at within the current
+  // bound; reaching it again no shallower cannot do better
+  TranspositionTable table = new TranspositionTable(1 << 16);
+
+  // constructor for a solver over the game as it stands now
+  FloodSolver(FloodEngine engine) {
+    this(new RegionSnapshot(engine));
+  }
+
+  // constructor for a solver over a snapshot taken earlier
+  FloodSolver(RegionSnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  // finds a shortest solution, giving up on proving it after nodeBudget search
+  // nodes; a beam search first gives a solution to beat, which is returned as
+  // it is when no shorter one exists or the budget runs out
+  SolverResult solveExact(long nodeBudget) {
+    long start = System.nanoTime();
+    RegionSnapshot s = this.snapshot;
+    SolverResult best = solveBeam(64, 0);
+    long[] flooded = s.startFlooded();
+    long[] frontier = s.startFrontier();
+    this.nodes = 0;
+    this.nodeBudget = nodeBudget;
+    this.outOfBudget = false;
+    for (int bound = s.lowerBound(flooded, frontier); bound < best.moves.length; bound++) {
+      allocate(bound + 1);
+      this.floodedAt[0] = flooded;
+      this.frontierAt[0] = frontier;
+      this.hashAt[0] = s.startHash();
+      this.table.nextGeneration();
+      if (search(0, bound, s.floodColor)) {
+        return new SolverResult(Arrays.copyOf(this.path, this.solvedDepth), true,
+            best.nodes + this.nodes, System.nanoTime() - start);
+      }
+      if (this.outOfBudget) {
+        return new SolverResult(best.moves, false, best.nodes + this.nodes,
+            System.nanoTime() - start);
+      }
+    }
+    return new SolverResult(best.moves, true, best.nodes + this.nodes,
+        System.nanoTime() - start);
+  }
+
+  // makes room for paths of the given length
+  void allocate(int depth) {
+    this.floodedAt = new long[depth + 1][this.snapshot.words];
+    this.frontierAt = new long[depth + 1][this.snapshot.words];
+    this.hashAt = new long[depth + 1];
+    this.path = new int[depth];
+  }
+
+  // depth-first search for a win within bound moves from the position at the
+  // given depth, leaving the moves in path
+  boolean search(int depth, int bound, int floodColor) {
+    RegionSnapshot s = this.snapshot;
+    long[] flooded = this.floodedAt[depth];
+    long[] frontier = this.frontierAt[depth];
+    if (s.isWon(frontier)) {
+      this.solvedDepth = depth;
+      return true;
+    }
+    if (depth + s.lowerBound(flooded, frontier) > bound) {
+      return false;
+    }
+    this.nodes++;
+    if (this.nodes > this.nodeBudget || ((this.nodes & 1023) == 0 && this.stopped)) {
+      this.outOfBudget = true;
+      return false;
+    }
+    long hash = this.hashAt[depth];
+    int seen = this.table.get(hash);
+    if (seen != this.table.missing && seen <= depth) {
+      return false;
+    }
+    this.table.put(hash, depth, bound - depth);
+    int forced = s.eliminatingColor(flooded, frontier, floodColor);
+    for (int c : orderedMoves(frontier, floodColor, forced)) {
+      s.play(flooded, frontier, c, this.floodedAt[depth + 1], this.frontierAt[depth + 1]);
+      this.hashAt[depth + 1] = s.hashAfter(hash, flooded, this.floodedAt[depth + 1], floodColor,
+          c);
+      this.path[depth] = c;
+      if (search(depth + 1, bound, c)) {
+        return true;
+      }
+      if (this.outOfBudget) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  // the colors worth playing from the given frontier, largest gain first; only
+  // the forced color when there is one
+  int[] orderedMoves(long[] frontier, int floodColor, int forced) {
+    RegionSnapshot s = this.snapshot;
+    if (forced >= 0) {
+      return new int[] { forced };
+    }
+    int[] moves = new int[s.colorCount];
+    int[] gains = new int[s.colorCount];
+    int count = 0;
+    for (int c = 0; c < s.colorCount; c++) {
+      if (c != floodColor && s.captures(frontier, c)) {
+        int gain = s.gain(frontier, c);
+        int k = count;
+        while (k > 0 && gains[k - 1] < gain) {
+          moves[k] = moves[k - 1];
+          gains[k] = gains[k - 1];
+          k--;
+        }
+        moves[k] = c;
+        gains[k] = gain;
+        count++;
+      }
+    }
+    return Arrays.copyOf(moves, count);
+  }
+
+  // finds a short solution keeping the width best distinct positions after
+  // every move, dropping the ones other move orders already reached; once
+  // budgetMillis have passed it narrows to one position and finishes
+  // greedily, 0 meaning no time limit
+  SolverResult solveBeam(int width, long budgetMillis) {
+    long start = System.nanoTime();
+    long deadline = start + budgetMillis * 1000000L;
+    RegionSnapshot s = this.snapshot;
+    long expanded = 0;
+    ArrayList<BeamNode> beam = new ArrayList<BeamNode>();
+    beam.add(new BeamNode(null, -1, s.floodColor, s.startFlooded(), s.startFrontier(),
+        s.cells[0], s.startHash()));
+    TranspositionTable layer = new TranspositionTable(Math.max(2, 4 * width));
+    while (!s.isWon(beam.get(0).frontier)) {
+      if ((budgetMillis > 0 && System.nanoTime() > deadline) || this.stopped) {
+        width = 1;
+      }
+      ArrayList<BeamNode> next = new ArrayList<BeamNode>();
+      for (BeamNode node : beam) {
+        expanded++;
+        int forced = s.eliminatingColor(node.flooded, node.frontier, node.color);
+        for (int c : orderedMoves(node.frontier, node.color, forced)) {
+          long[] flooded = new long[s.words];
+          long[] frontier = new long[s.words];
+          int gained = s.play(node.flooded, node.frontier, c, flooded, frontier);
+          next.add(new BeamNode(node, c, c, flooded, frontier, node.cells + gained,
+              s.hashAfter(node.hash, node.flooded, flooded, node.color, c)));
+        }
+      }
+      next.sort(new BeamOrder());
+      beam = new ArrayList<BeamNode>();
+      layer.nextGeneration();
+      for (int k = 0; k < next.size() && beam.size() < width; k++) {
+        BeamNode node = next.get(k);
+        if (layer.get(node.hash) == layer.missing) {
+          layer.put(node.hash, 0, 0);
+          beam.add(node);
+        }
+      }
+    }
+    return new SolverResult(beam.get(0).moves(), false, expanded, System.nanoTime() - start);
+  }
+}
+
+// represents a position reached by the beam search and the move that led to it
+class BeamNode {
+  BeamNode parent;
+  int move;
+  int color;
+  long[] flooded;
+  long[] frontier;
+  int cells;
+  int depth;
+  long hash;
+
+  BeamNode(BeamNode parent, int move, int color, long[] flooded, long[] frontier, int cells,
+      long hash) {
+    this.parent = parent;
+    this.move = move;
+    this.color = color;
+    this.flooded = flooded;
+    this.frontier = frontier;
+    this.cells = cells;
+    this.hash = hash;
+    if (parent == null) {
+      this.depth = 0;
+    }
+    else {
+      this.depth = parent.depth + 1;
+    }
+  }
+
+  // the moves from the start to this position
+  int[] moves() {
+    int[] moves = new int[this.depth];
+    BeamNode node = this;
+    while (node.parent != null) {
+      moves[node.depth - 1] = node.move;
+      node = node.parent;
+    }
+    return moves;
+  }
+}
+
+// orders beam positions by cells flooded, most first
+class BeamOrder implements Comparator<BeamNode> {
+  public int compare(BeamNode a, BeamNode b) {
+    return Integer.compare(b.cells, a.cells);
+  }
+}
@@ -0,0 +1,213 @@
+package floodit;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+// represents the best next color found so far for one position: the color,
+// how many moves the line it starts wins in (0 before any line is known),
+// whether that is proven the fewest, and the hash of the position it is for.
+// Never changed once made, so the render side can read it from any thread
+class Hint {
+  int color;
+  int movesToWin;
+  boolean optimal;
+  long position;
+
+  Hint(int color, int movesToWin, boolean optimal, long position) {
+    this.color = color;
+    this.movesToWin = movesToWin;
+    this.optimal = optimal;
+    this.position = position;
+  }
+
+  // checks if this hint says more than the given one about the same position
+  boolean betterThan(Hint other) {
+    if (other == null || other.position != this.position) {
+      return true;
+    }
+    if (other.optimal) {
+      return false;
+    }
+    return this.optimal || other.movesToWin == 0
+        || (this.movesToWin > 0 && this.movesToWin < other.movesToWin);
+  }
+}
+
+// represents hint searches run on one background thread. A request for a
+// position small enough to search copies the region graph, which is all the
+// search needs, and hands it to a job; the world never waits on a job, and
+// reads the latest hint out of an atomic reference, which each job only ever
+// swaps for a better one. A new request cancels the job before it, whose
+// position is out of date
+class HintService {
+  // the hint published last, for whichever position it was found
+  AtomicReference<Hint> latest = new AtomicReference<Hint>();
+  ExecutorService executor;
+  HintJob job;
+  // the most nodes the last exact search may use
+  long maxNodes = 1L << 24;
+
+  // starts looking for a hint for the given game as it stands now, dropping
+  // the search for any earlier position. Positions past the solvers' region
+  // limit get the greedy hint right away, read off the live graph without
+  // copying it
+  void request(FloodEngine engine) {
+    cancel();
+    if (engine.isWon()) {
+      return;
+    }
+    if (engine.regions.regionsLeft > RegionSnapshot.MAX_REGIONS) {
+      this.latest.set(new Hint(greedyColor(engine.regions, engine.palette.size()), 0, false,
+          engine.hash()));
+      return;
+    }
+    this.job = new HintJob(this, new RegionGraph(engine.regions), engine.palette.size(),
+        engine.board.keys, engine.hash());
+    if (this.executor == null) {
+      this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "floodit-hint");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    this.executor.execute(this.job);
+  }
+
+  // stops the running search, if any
+  void cancel() {
+    if (this.job != null) {
+      this.job.cancel();
+      this.job = null;
+    }
+  }
+
+  // the best hint found for the position of the given hash, or null
+  Hint current(long position) {
+    Hint hint = this.latest.get();
+    if (hint == null || hint.position != position) {
+      return null;
+    }
+    return hint;
+  }
+
+  // keeps the given hint of the given job unless the job was cancelled or a
+  // hint as good for the same position is already there
+  void publish(HintJob job, Hint hint) {
+    while (!job.cancelled) {
+      Hint current = this.latest.get();
+      if (current != null && current.position == hint.position && !hint.betterThan(current)) {
+        return;
+      }
+      if (this.latest.compareAndSet(current, hint)) {
+        return;
+      }
+    }
+  }
+
+  // the color of the given graph whose neighboring regions hold the most
+  // cells, out of colorCount
+  int greedyColor(RegionGraph g, int colorCount) {
+    long[] gains = new long[colorCount];
+    BitSet seen = new BitSet();
+    for (int k = 0; k < g.floodNeighbors.size(); k++) {
+      int r = g.find(g.floodNeighbors.get(k));
+      if (r != g.floodRoot && !seen.get(r)) {
+        seen.set(r);
+        gains[g.color[r]] += g.cellCount[r];
+      }
+    }
+    int best = -1;
+    for (int c = 0; c < colorCount; c++) {
+      if (c != g.floodColor() && (best < 0 || gains[c] > gains[best])) {
+        best = c;
+      }
+    }
+    return best;
+  }
+
+  // stops the search and lets the thread go
+  void shutdown() {
+    cancel();
+    if (this.executor != null) {
+      this.executor.shutdownNow();
+      this.executor = null;
+    }
+  }
+}
+
+// represents the search for a hint for one position, refining as it goes:
+// first the color that captures the most cells, then beam searches of
+// growing width, then exact searches with growing node budgets until one
+// proves its line the shortest. Every stage publishes what it finds
+class HintJob implements Runnable {
+  HintService service;
+  RegionGraph graph;
+  int colorCount;
+  ZobristKeys keys;
+  long position;
+  volatile boolean cancelled = false;
+  // the solver running now, so cancelling can stop it part way
+  volatile FloodSolver solver;
+
+  HintJob(HintService service, RegionGraph graph, int colorCount, ZobristKeys keys,
+      long position) {
+    this.service = service;
+    this.graph = graph;
+    this.colorCount = colorCount;
+    this.keys = keys;
+    this.position = position;
+  }
+
+  // runs the stages in turn until one proves its line or the job is cancelled
+  public void run() {
+    this.service.publish(this, new Hint(this.service.greedyColor(this.graph, this.colorCount), 0,
+        false, this.position));
+    if (this.cancelled) {
+      return;
+    }
+    RegionSnapshot snapshot = new RegionSnapshot(this.graph, this.colorCount, this.keys);
+    for (int width = 1; width <= 256 && !this.cancelled; width *= 4) {
+      offer(startSolver(snapshot).solveBeam(width, 0));
+    }
+    for (long nodes = 1 << 14; nodes <= this.service.maxNodes && !this.cancelled; nodes *= 4) {
+      SolverResult result = startSolver(snapshot).solveExact(nodes);
+      if (result.optimal) {
+        offer(result);
+        return;
+      }
+      offer(result);
+    }
+  }
+
+  // a solver over the given snapshot that cancel can reach; one made just as
+  // the job is cancelled starts out stopped
+  FloodSolver startSolver(RegionSnapshot snapshot) {
+    FloodSolver next = new FloodSolver(snapshot);
+    this.solver = next;
+    next.stopped = this.cancelled;
+    return next;
+  }
+
+  // publishes the first move of the given line, unless the job was cancelled
+  // while it was found
+  void offer(SolverResult result) {
+    if (!this.cancelled && result.moves.length > 0) {
+      this.service.publish(this, new Hint(result.firstMove(), result.moves.length,
+          result.optimal, this.position));
+    }
+  }
+
+  // stops the job and the solver it is running
+  void cancel() {
+    this.cancelled = true;
+    FloodSolver running = this.solver;
+    if (running != null) {
+      running.stopped = true;
+    }
+  }
+}
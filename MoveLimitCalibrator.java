@@ -0,0 +1,162 @@
+package floodit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// represents a way of setting the move limit of a board from the board
+// itself: many randomized greedy playouts race across the fork-join pool for
+// a fixed time, and the limit is a quantile of how many moves they took plus
+// some slack. Playouts run on copies of the region graph, so one move costs
+// the flood's neighbors rather than its cells, on any size of board
+class MoveLimitCalibrator {
+  // how long the playouts may run, 0 for no limit, and how many at most
+  long budgetMillis = 50;
+  int maxPlayouts = 4096;
+  // the chance that a playout plays a random color that captures something
+  // instead of the one that captures the most
+  double explore = 0.1;
+  // the quantile of the playout lengths the limit starts from, and the share
+  // of it added on top
+  double quantile = 0.5;
+  double slack = 0.15;
+  // number of playouts to run side by side
+  int parallelism = Runtime.getRuntime().availableProcessors();
+
+  // playouts finished by the last calibration, and their lengths in order
+  int[] lengths = new int[0];
+
+  // the move limit for the game as it stands now, or -1 when no playout
+  // finished in time
+  int calibrate(FloodEngine engine) {
+    long deadline = this.budgetMillis > 0 ? System.nanoTime() + this.budgetMillis * 1000000L
+        : Long.MAX_VALUE;
+    int[] results = new int[this.maxPlayouts];
+    Arrays.fill(results, -1);
+    AtomicInteger next = new AtomicInteger();
+    ArrayList<PlayoutRunner> runners = new ArrayList<PlayoutRunner>();
+    for (int k = 0; k < Math.max(1, this.parallelism); k++) {
+      runners.add(new PlayoutRunner(this, engine.regions, engine.palette.size(),
+          engine.boardSeed, deadline, next, results));
+    }
+    for (PlayoutRunner runner : runners) {
+      runner.fork();
+    }
+    for (PlayoutRunner runner : runners) {
+      runner.join();
+    }
+    int finished = 0;
+    for (int length : results) {
+      if (length >= 0) {
+        results[finished] = length;
+        finished++;
+      }
+    }
+    this.lengths = Arrays.copyOf(results, finished);
+    Arrays.sort(this.lengths);
+    if (finished == 0) {
+      return -1;
+    }
+    int at = Math.min(finished - 1, (int) (this.quantile * finished));
+    return Math.max(1, (int) Math.ceil(this.lengths[at] * (1 + this.slack)));
+  }
+}
+
+// represents one thread's share of the playouts: it claims playout numbers
+// until they or the time run out, seeds each playout from its number so the
+// results do not depend on which thread ran it, and writes every length into
+// that playout's slot
+class PlayoutRunner extends RecursiveAction {
+  MoveLimitCalibrator calibrator;
+  RegionGraph base;
+  int colorCount;
+  long boardSeed;
+  long deadline;
+  AtomicInteger next;
+  int[] results;
+
+  // scratch space for one playout
+  long[] gains;
+  int[] seen;
+  int stamp = 0;
+  MoveRecord record = new MoveRecord(0, 0);
+
+  PlayoutRunner(MoveLimitCalibrator calibrator, RegionGraph base, int colorCount,
+      long boardSeed, long deadline, AtomicInteger next, int[] results) {
+    this.calibrator = calibrator;
+    this.base = base;
+    this.colorCount = colorCount;
+    this.boardSeed = boardSeed;
+    this.deadline = deadline;
+    this.next = next;
+    this.results = results;
+  }
+
+  // runs playouts until none are left to claim or the time is up
+  protected void compute() {
+    this.gains = new long[this.colorCount];
+    this.seen = new int[this.base.regionCount];
+    for (int n = this.next.getAndIncrement(); n < this.results.length
+        && System.nanoTime() < this.deadline; n = this.next.getAndIncrement()) {
+      this.results[n] = playout(new SplittableRandom(this.boardSeed + n * 0x9E3779B97F4A7C15L));
+    }
+  }
+
+  // plays a copy of the game out to a win, returns the moves it took, or -1
+  // if the time ran out first
+  int playout(SplittableRandom rand) {
+    RegionGraph g = new RegionGraph(this.base);
+    int moves = 0;
+    while (!g.isOneRegion()) {
+      this.record.absorbed.clear();
+      g.applyMove(chooseColor(g, rand), this.record);
+      moves++;
+      if ((moves & 63) == 0 && System.nanoTime() >= this.deadline) {
+        return -1;
+      }
+    }
+    return moves;
+  }
+
+  // the color capturing the most cells, ties broken at random, or now and
+  // then a random color that captures anything
+  int chooseColor(RegionGraph g, SplittableRandom rand) {
+    Arrays.fill(this.gains, 0);
+    this.stamp++;
+    for (int k = 0; k < g.floodNeighbors.size(); k++) {
+      int r = g.find(g.floodNeighbors.get(k));
+      if (r != g.floodRoot && this.seen[r] != this.stamp) {
+        this.seen[r] = this.stamp;
+        this.gains[g.color[r]] += g.cellCount[r];
+      }
+    }
+    boolean explore = rand.nextDouble() < this.calibrator.explore;
+    int best = -1;
+    int ties = 0;
+    for (int c = 0; c < this.colorCount; c++) {
+      if (this.gains[c] == 0) {
+        continue;
+      }
+      if (explore) {
+        // keeps each capturing color with equal chance
+        ties++;
+        if (rand.nextInt(ties) == 0) {
+          best = c;
+        }
+      }
+      else if (best < 0 || this.gains[c] > this.gains[best]) {
+        best = c;
+        ties = 1;
+      }
+      else if (this.gains[c] == this.gains[best]) {
+        ties++;
+        if (rand.nextInt(ties) == 0) {
+          best = c;
+        }
+      }
+    }
+    return best;
+  }
+}
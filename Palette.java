@@ -0,0 +1,170 @@
+package floodit;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// represents every color a game can pick from, worked out once: the eight
+// named colors the game always had, then enough further hues to make 256, each
+// with its packed RGB value and its name. Names are found by binary search on
+// the RGB values rather than by comparing Color objects one by one
+class ColorTable {
+  // the most colors a game can have; a cell keeps its color in one byte
+  int maxColors = 256;
+
+  Color[] colors = new Color[this.maxColors];
+  String[] names = new String[this.maxColors];
+  // the RGB value of every color in ascending order, and the name of each
+  int[] sortedRgb = new int[this.maxColors];
+  String[] sortedNames = new String[this.maxColors];
+
+  // builds the table
+  ColorTable() {
+    Color[] named = new Color[] { Color.blue, Color.green, Color.yellow, Color.red, Color.pink,
+        Color.orange, Color.MAGENTA, Color.gray };
+    String[] namedNames = new String[] { "BLUE", "GREEN", "YELLOW", "RED", "PINK", "ORANGE",
+        "MAGENTA", "GRAY" };
+    for (int k = 0; k < named.length; k++) {
+      this.colors[k] = named[k];
+      this.names[k] = namedNames[k];
+    }
+    // the rest step around the hue circle by the golden angle, cycling through
+    // a few saturations and brightnesses so neighbors stay apart
+    int count = named.length;
+    for (int step = 0; count < this.maxColors; step++) {
+      float hue = (float) ((step * 0.6180339887498949) % 1.0);
+      float saturation = 0.5f + 0.25f * (step % 3);
+      float brightness = 0.6f + 0.2f * ((step / 3) % 3);
+      Color color = new Color(Color.HSBtoRGB(hue, saturation, brightness));
+      if (indexOf(color.getRGB(), count) < 0) {
+        this.colors[count] = color;
+        this.names[count] = String.format("#%06X", color.getRGB() & 0xFFFFFF);
+        count++;
+      }
+    }
+    // sort RGB values with the index of their color in the low bits
+    long[] order = new long[this.maxColors];
+    for (int k = 0; k < this.maxColors; k++) {
+      order[k] = ((long) this.colors[k].getRGB() << 32) | k;
+    }
+    Arrays.sort(order);
+    for (int k = 0; k < this.maxColors; k++) {
+      this.sortedRgb[k] = (int) (order[k] >> 32);
+      this.sortedNames[k] = this.names[(int) order[k]];
+    }
+  }
+
+  // index of the color with the given RGB value among the first count colors,
+  // or -1
+  int indexOf(int rgb, int count) {
+    for (int k = 0; k < count; k++) {
+      if (this.colors[k].getRGB() == rgb) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  // the name of the color with the given RGB value, or "Unknown Color"
+  String nameOf(int rgb) {
+    int k = Arrays.binarySearch(this.sortedRgb, rgb);
+    if (k < 0) {
+      return "Unknown Color";
+    }
+    return this.sortedNames[k];
+  }
+}
+
+// represents the colors of one game as small indices into flat tables: the
+// Color, packed RGB value and name of every index sit in arrays, so telling two
+// colors of a game apart is comparing two ints and naming one is an array read
+class Palette {
+  // the color table every palette names and picks its colors from, built
+  // once for the whole program
+  static final ColorTable TABLE = new ColorTable();
+
+  Color[] colors = new Color[256];
+  int[] rgb = new int[256];
+  // filled in the first time a color is named
+  String[] names = new String[256];
+  int size = 0;
+
+  // number of colors in the palette
+  int size() {
+    return this.size;
+  }
+
+  // the color at the given index
+  Color get(int index) {
+    return this.colors[index];
+  }
+
+  // the packed RGB value of the color at the given index
+  int rgb(int index) {
+    return this.rgb[index];
+  }
+
+  // the name of the color at the given index
+  String name(int index) {
+    if (this.names[index] == null) {
+      this.names[index] = TABLE.nameOf(this.rgb[index]);
+    }
+    return this.names[index];
+  }
+
+  // index of the color with the given RGB value, or -1
+  int indexOf(int rgb) {
+    for (int k = 0; k < this.size; k++) {
+      if (this.rgb[k] == rgb) {
+        return k;
+      }
+    }
+    return -1;
+  }
+
+  // index of the given color, or -1
+  int indexOf(Color color) {
+    return indexOf(color.getRGB());
+  }
+
+  // adds a color at the end, returns its index
+  int add(Color color) {
+    if (this.size == this.colors.length) {
+      throw new IllegalArgumentException("A palette holds at most 256 colors.");
+    }
+    this.colors[this.size] = color;
+    this.rgb[this.size] = color.getRGB();
+    this.names[this.size] = null;
+    this.size++;
+    return this.size - 1;
+  }
+
+  // replaces the colors with count distinct colors drawn from the given
+  // generator, in random order, out of the eight named colors or as many of
+  // the color table as it takes
+  void choose(SplittableRandom rand, int count) {
+    clear();
+    int available = Math.max(8, count);
+    ArrayList<Color> availableColors = new ArrayList<Color>(available);
+    for (int k = 0; k < available; k++) {
+      availableColors.add(TABLE.colors[k]);
+    }
+
+    for (int i = 0; i < count; i++) {
+      int colorIndex = rand.nextInt(availableColors.size());
+      add(availableColors.get(colorIndex));
+      availableColors.remove(colorIndex);
+    }
+  }
+
+  // removes every color
+  void clear() {
+    this.size = 0;
+  }
+
+  // the colors in order, as a list
+  ArrayList<Color> toList() {
+    return new ArrayList<Color>(Arrays.asList(this.colors).subList(0, this.size));
+  }
+}
@@ -0,0 +1,252 @@
+package floodit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// represents a branch-and-bound search for a shortest win spread over a
+// fork-join pool: the first splitDepth moves fan out into tasks that idle
+// threads steal, and below that each task searches depth-first on its own.
+// All tasks prune against one shared best length, so a short win found by any
+// thread cuts the work of every other
+class ParallelFloodSolver {
+  RegionSnapshot snapshot;
+  int parallelism;
+  int splitDepth;
+  // entries in the transposition table of every thread
+  int tableSize = 1 << 16;
+
+  // the best win so far, and its length for quick reads while pruning
+  AtomicReference<int[]> best = new AtomicReference<int[]>();
+  AtomicInteger bestLength = new AtomicInteger();
+  long deadline;
+  volatile boolean outOfTime = false;
+
+  // one worker per thread, made the first time that thread runs a task
+  ThreadLocal<SearchWorker> workers;
+  ConcurrentLinkedQueue<SearchWorker> allWorkers = new ConcurrentLinkedQueue<SearchWorker>();
+
+  // constructor for a search over the game as it stands now; the snapshot
+  // refuses positions past RegionSnapshot.MAX_REGIONS before allocating, which
+  // also bounds the scratch space every worker's copy of it makes
+  ParallelFloodSolver(FloodEngine engine, int parallelism, int splitDepth) {
+    this(new RegionSnapshot(engine), parallelism, splitDepth);
+  }
+
+  // constructor for a search over a snapshot taken earlier
+  ParallelFloodSolver(RegionSnapshot snapshot, int parallelism, int splitDepth) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be at least 1.");
+    }
+    this.snapshot = snapshot;
+    this.parallelism = parallelism;
+    this.splitDepth = splitDepth;
+  }
+
+  // finds a shortest win, proven optimal unless budgetMillis (0 for no limit)
+  // run out first, in which case the best win found so far is returned
+  SolverResult solve(long budgetMillis) {
+    long start = System.nanoTime();
+    SolverResult beam = new FloodSolver(new RegionSnapshot(this.snapshot)).solveBeam(64, 0);
+    this.best.set(beam.moves);
+    this.bestLength.set(beam.moves.length);
+    this.deadline = budgetMillis > 0 ? start + budgetMillis * 1000000L : 0;
+    this.outOfTime = false;
+    final ParallelFloodSolver search = this;
+    this.workers = new ThreadLocal<SearchWorker>() {
+      protected SearchWorker initialValue() {
+        SearchWorker worker = new SearchWorker(search, Thread.currentThread().getName());
+        search.allWorkers.add(worker);
+        return worker;
+      }
+    };
+    this.allWorkers.clear();
+    ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+    try {
+      pool.invoke(new SubtreeSearch(this, this.snapshot.startFlooded(),
+          this.snapshot.startFrontier(), this.snapshot.floodColor, this.snapshot.startHash(),
+          new int[0]));
+    }
+    finally {
+      pool.shutdown();
+    }
+    SolverResult result = new SolverResult(this.best.get(), !this.outOfTime, beam.nodes,
+        System.nanoTime() - start);
+    for (SearchWorker worker : this.allWorkers) {
+      result.nodes += worker.stats.nodes;
+      result.workers.add(worker.stats);
+    }
+    return result;
+  }
+
+  // keeps the given win if it is shorter than the best one so far
+  void offer(int[] moves) {
+    int[] current = this.best.get();
+    while (moves.length < current.length) {
+      if (this.best.compareAndSet(current, moves)) {
+        this.bestLength.set(moves.length);
+        return;
+      }
+      current = this.best.get();
+    }
+  }
+
+  // the worker of the calling thread
+  SearchWorker worker() {
+    return this.workers.get();
+  }
+}
+
+// represents what one thread of a parallel search did
+class SearchStats {
+  String thread;
+  long tasks = 0;
+  long nodes = 0;
+  long pruned = 0;
+  long cached = 0;
+  long wins = 0;
+
+  SearchStats(String thread) {
+    this.thread = thread;
+  }
+
+  public String toString() {
+    return this.thread + ": " + this.tasks + " tasks, " + this.nodes + " nodes, " + this.pruned
+        + " pruned, " + this.cached + " cached, " + this.wins + " wins";
+  }
+}
+
+// represents the search state owned by one thread: its own copy of the
+// snapshot's scratch space, per-depth buffers, counters and a table of the
+// shallowest depth each position was searched at
+class SearchWorker {
+  ParallelFloodSolver search;
+  FloodSolver solver;
+  SearchStats stats;
+  long[][] floodedAt = new long[0][];
+  long[][] frontierAt = new long[0][];
+  long[] hashAt = new long[0];
+  int[] path = new int[0];
+  TranspositionTable table;
+
+  SearchWorker(ParallelFloodSolver search, String thread) {
+    this.search = search;
+    this.solver = new FloodSolver(new RegionSnapshot(search.snapshot));
+    this.stats = new SearchStats(thread);
+    this.table = new TranspositionTable(search.tableSize);
+  }
+
+  // searches depth-first below the given position for wins shorter than the
+  // best one, with prefix the moves that led to it
+  void searchBelow(long[] flooded, long[] frontier, int color, long hash, int[] prefix) {
+    int limit = this.search.bestLength.get();
+    if (this.path.length < limit + 1) {
+      this.floodedAt = new long[limit + 1][this.solver.snapshot.words];
+      this.frontierAt = new long[limit + 1][this.solver.snapshot.words];
+      this.hashAt = new long[limit + 1];
+      this.path = new int[limit + 1];
+    }
+    this.hashAt[prefix.length] = hash;
+    System.arraycopy(prefix, 0, this.path, 0, prefix.length);
+    System.arraycopy(flooded, 0, this.floodedAt[prefix.length], 0, flooded.length);
+    System.arraycopy(frontier, 0, this.frontierAt[prefix.length], 0, frontier.length);
+    dive(prefix.length, color);
+  }
+
+  // one step of the depth-first search from the position at the given depth
+  void dive(int depth, int color) {
+    RegionSnapshot s = this.solver.snapshot;
+    long[] flooded = this.floodedAt[depth];
+    long[] frontier = this.frontierAt[depth];
+    this.stats.nodes++;
+    if (s.isWon(frontier)) {
+      this.stats.wins++;
+      this.search.offer(Arrays.copyOf(this.path, depth));
+      return;
+    }
+    if (depth + s.lowerBound(flooded, frontier) >= this.search.bestLength.get()) {
+      this.stats.pruned++;
+      return;
+    }
+    if ((this.stats.nodes & 1023) == 0 && this.search.deadline > 0
+        && System.nanoTime() > this.search.deadline) {
+      this.search.outOfTime = true;
+    }
+    if (this.search.outOfTime) {
+      return;
+    }
+    long hash = this.hashAt[depth];
+    int seen = this.table.get(hash);
+    if (seen != this.table.missing && seen <= depth) {
+      this.stats.cached++;
+      return;
+    }
+    this.table.put(hash, depth, this.search.bestLength.get() - depth);
+    int forced = s.eliminatingColor(flooded, frontier, color);
+    for (int c : this.solver.orderedMoves(frontier, color, forced)) {
+      s.play(flooded, frontier, c, this.floodedAt[depth + 1], this.frontierAt[depth + 1]);
+      this.hashAt[depth + 1] = s.hashAfter(hash, flooded, this.floodedAt[depth + 1], color, c);
+      this.path[depth] = c;
+      dive(depth + 1, c);
+    }
+  }
+}
+
+// represents the search below one position near the top of the move tree;
+// above the split depth it forks one task per move, below it searches alone
+class SubtreeSearch extends RecursiveAction {
+  ParallelFloodSolver search;
+  long[] flooded;
+  long[] frontier;
+  int color;
+  long hash;
+  int[] prefix;
+
+  SubtreeSearch(ParallelFloodSolver search, long[] flooded, long[] frontier, int color,
+      long hash, int[] prefix) {
+    this.search = search;
+    this.flooded = flooded;
+    this.frontier = frontier;
+    this.color = color;
+    this.hash = hash;
+    this.prefix = prefix;
+  }
+
+  // searches this subtree, splitting it while it is near the top
+  protected void compute() {
+    SearchWorker worker = this.search.worker();
+    worker.stats.tasks++;
+    if (this.prefix.length >= this.search.splitDepth) {
+      worker.searchBelow(this.flooded, this.frontier, this.color, this.hash, this.prefix);
+      return;
+    }
+    RegionSnapshot s = worker.solver.snapshot;
+    worker.stats.nodes++;
+    if (s.isWon(this.frontier)) {
+      worker.stats.wins++;
+      this.search.offer(this.prefix);
+      return;
+    }
+    if (this.prefix.length + s.lowerBound(this.flooded, this.frontier) >= this.search.bestLength
+        .get()) {
+      worker.stats.pruned++;
+      return;
+    }
+    int forced = s.eliminatingColor(this.flooded, this.frontier, this.color);
+    ArrayList<SubtreeSearch> children = new ArrayList<SubtreeSearch>();
+    for (int c : worker.solver.orderedMoves(this.frontier, this.color, forced)) {
+      long[] nextFlooded = new long[s.words];
+      long[] nextFrontier = new long[s.words];
+      s.play(this.flooded, this.frontier, c, nextFlooded, nextFrontier);
+      int[] nextPrefix = Arrays.copyOf(this.prefix, this.prefix.length + 1);
+      nextPrefix[this.prefix.length] = c;
+      children.add(new SubtreeSearch(this.search, nextFlooded, nextFrontier, c,
+          s.hashAfter(this.hash, this.flooded, nextFlooded, this.color, c), nextPrefix));
+    }
+    invokeAll(children);
+  }
+}
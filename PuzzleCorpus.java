@@ -0,0 +1,419 @@
+package floodit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// represents one generated puzzle: the seed that deals it, its size and
+// number of colors, the length of the shortest win the solver found and
+// whether it is proven, how much harder the board is than it looks, and the
+// palette index of every cell
+class PuzzleRecord {
+  long seed;
+  int size;
+  int colors;
+  int moves;
+  boolean optimal;
+  float difficulty;
+  byte[] cells;
+}
+
+// represents the layout of a puzzle file, in little-endian order. A 128-byte
+// header holds a magic number, the version, the number of puzzles and where
+// each column starts; then come the columns, one value per puzzle, each
+// starting on an 8-byte boundary:
+//   seed        long
+//   size        int
+//   colors      short
+//   flags       byte    bit 0 set when the move count is proven shortest
+//   moves       int
+//   difficulty  float
+//   cells       long    offset of the puzzle's cells from the start of the heap
+// and last the heap: every puzzle's cells column after column, each packed
+// into as few bits as its colors need, low bits first, padded to whole longs.
+// Every value sits at a fixed place, so a mapped file is read as it is
+class PuzzleFileFormat {
+  int magic = 0x43444C46;
+  int version = 1;
+  int headerBytes = 128;
+
+  // where the columns of a file of the given number of puzzles start, in
+  // column order, followed by where the heap starts
+  long[] columnStarts(long count) {
+    int[] widths = new int[] { 8, 4, 2, 1, 4, 4, 8 };
+    long[] starts = new long[widths.length + 1];
+    long at = this.headerBytes;
+    for (int k = 0; k < widths.length; k++) {
+      starts[k] = at;
+      at = align(at + count * widths[k]);
+    }
+    starts[widths.length] = at;
+    return starts;
+  }
+
+  // the given offset rounded up to a whole long
+  long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  // bits one cell of a board of the given number of colors takes
+  int bitsPerCell(int colors) {
+    return 32 - Integer.numberOfLeadingZeros(colors - 1);
+  }
+
+  // bytes the packed cells of a board take
+  long cellBytes(int size, int colors) {
+    long bits = (long) size * size * bitsPerCell(colors);
+    return ((bits + 63) >>> 6) << 3;
+  }
+}
+
+// represents a batch pipeline that deals, solves and scores puzzles across
+// the fork-join pool and streams them into a puzzle file. Puzzle id n is
+// dealt from seed baseSeed + n; a batch of ids is worked out in parallel,
+// then its column values are written in place and its cells packed through
+// one fixed buffer onto the end of the heap, so memory stays at one batch
+// whatever the number of puzzles or the size of a board
+class CorpusGenerator {
+  PuzzleFileFormat format = new PuzzleFileFormat();
+  long baseSeed;
+  int size;
+  int colors;
+  // puzzles worked out before they are written, and per task; a batch also
+  // holds no more dealt cells than maxBatchBytes, and at least one board
+  int batchSize = 1024;
+  long maxBatchBytes = 1L << 28;
+  int grain = 8;
+  // bytes of packed cells written to the file at a time, a whole number of
+  // longs
+  int cellBufferBytes = 1 << 20;
+  // the node budget of the exact solver, past which the best line found is
+  // kept unproven; boards past the solvers' region limit are scored on
+  // playouts only
+  long nodeBudget = 1 << 16;
+  // greedy playouts per board for the difficulty score
+  int playouts = 64;
+
+  CorpusGenerator(long baseSeed, int size, int colors) {
+    this.baseSeed = baseSeed;
+    this.size = size;
+    this.colors = colors;
+  }
+
+  // writes count puzzles to the file at the given path, replacing it
+  void write(Path path, int count) throws IOException {
+    long[] starts = this.format.columnStarts(count);
+    long cellBytes = this.format.cellBytes(this.size, this.colors);
+    int perBatch = (int) Math.max(1,
+        Math.min(this.batchSize, this.maxBatchBytes / ((long) this.size * this.size)));
+    ByteBuffer cells = order(ByteBuffer.allocate(this.cellBufferBytes));
+    FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      ByteBuffer header = order(ByteBuffer.allocate(this.format.headerBytes));
+      header.putInt(this.format.magic).putInt(this.format.version).putLong(count);
+      for (int k = 0; k < starts.length - 1; k++) {
+        header.putLong(starts[k]);
+      }
+      writeFully(file, header, 0);
+      for (int from = 0; from < count; from += perBatch) {
+        PuzzleRecord[] batch = generate(from, Math.min(count, from + perBatch));
+        writeBatch(file, starts, from, batch, cellBytes, cells);
+      }
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  // deals, solves and scores the puzzles from until to, in parallel
+  PuzzleRecord[] generate(int from, int to) {
+    PuzzleRecord[] batch = new PuzzleRecord[to - from];
+    GeneratePuzzles task = new GeneratePuzzles(this, batch, from, 0, batch.length);
+    if (batch.length <= this.grain) {
+      task.compute();
+    }
+    else {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+    return batch;
+  }
+
+  // works out the puzzle of the given id on the given engine
+  PuzzleRecord puzzle(FloodEngine engine, int id) {
+    PuzzleRecord record = new PuzzleRecord();
+    record.seed = this.baseSeed + id;
+    record.size = this.size;
+    record.colors = this.colors;
+    engine.newGame(record.seed, this.size, this.colors);
+    record.cells = engine.board.colors.clone();
+    MoveLimitCalibrator greedy = new MoveLimitCalibrator();
+    greedy.budgetMillis = 0;
+    greedy.maxPlayouts = this.playouts;
+    greedy.parallelism = 1;
+    greedy.quantile = 0.5;
+    greedy.slack = 0;
+    int median = greedy.calibrate(engine);
+    if (engine.regions.regionsLeft <= RegionSnapshot.MAX_REGIONS) {
+      SolverResult best = new FloodSolver(engine).solveExact(this.nodeBudget);
+      record.moves = best.moves.length;
+      record.optimal = best.optimal;
+    }
+    else {
+      record.moves = greedy.lengths[0];
+      record.optimal = false;
+    }
+    // how many moves past the shortest win a greedy player needs, per move
+    record.difficulty = record.moves == 0 ? 0 : (float) (median - record.moves) / record.moves;
+    return record;
+  }
+
+  // writes each puzzle's column values at its place and its cells at the end
+  // of the heap, through the given cell buffer
+  void writeBatch(FileChannel file, long[] starts, int from, PuzzleRecord[] batch,
+      long cellBytes, ByteBuffer cells) throws IOException {
+    int n = batch.length;
+    int[] widths = new int[] { 8, 4, 2, 1, 4, 4, 8 };
+    ByteBuffer[] columns = new ByteBuffer[widths.length];
+    for (int k = 0; k < widths.length; k++) {
+      columns[k] = order(ByteBuffer.allocate(n * widths[k]));
+    }
+    long at = starts[starts.length - 1] + from * cellBytes;
+    for (int k = 0; k < n; k++) {
+      PuzzleRecord record = batch[k];
+      columns[0].putLong(record.seed);
+      columns[1].putInt(record.size);
+      columns[2].putShort((short) record.colors);
+      columns[3].put((byte) (record.optimal ? 1 : 0));
+      columns[4].putInt(record.moves);
+      columns[5].putFloat(record.difficulty);
+      columns[6].putLong((from + k) * cellBytes);
+      at = pack(file, record, cells, at);
+    }
+    for (int k = 0; k < widths.length; k++) {
+      writeFully(file, columns[k], starts[k] + (long) from * widths[k]);
+    }
+  }
+
+  // writes the cells of the given puzzle at the given position of the file,
+  // packed into longs and passed through the buffer, returns where they end
+  long pack(FileChannel file, PuzzleRecord record, ByteBuffer out, long at)
+      throws IOException {
+    int bits = this.format.bitsPerCell(record.colors);
+    long word = 0;
+    int used = 0;
+    for (byte cell : record.cells) {
+      long value = cell & 0xFF;
+      word |= value << used;
+      used += bits;
+      if (used >= 64) {
+        if (!out.hasRemaining()) {
+          at = flushCells(file, out, at);
+        }
+        out.putLong(word);
+        used -= 64;
+        word = used == 0 ? 0 : value >>> (bits - used);
+      }
+    }
+    if (used > 0) {
+      if (!out.hasRemaining()) {
+        at = flushCells(file, out, at);
+      }
+      out.putLong(word);
+    }
+    return flushCells(file, out, at);
+  }
+
+  // writes the packed cells in the buffer at the given position of the file
+  // and empties it, returns where they end
+  long flushCells(FileChannel file, ByteBuffer out, long at) throws IOException {
+    int length = out.position();
+    writeFully(file, out, at);
+    out.clear();
+    return at + length;
+  }
+
+  // the given buffer, set to the file's byte order
+  ByteBuffer order(ByteBuffer buffer) {
+    return buffer.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  // writes everything put into the buffer at the given position of the file
+  void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+    buffer.flip();
+    long at = position;
+    while (buffer.hasRemaining()) {
+      at += file.write(buffer, at);
+    }
+  }
+}
+
+// represents the working out of a range of a batch of puzzles, split in
+// halves across the fork-join pool until the pieces are small enough to do
+// on one engine
+class GeneratePuzzles extends RecursiveAction {
+  CorpusGenerator generator;
+  PuzzleRecord[] batch;
+  int firstId;
+  int from;
+  int to;
+
+  GeneratePuzzles(CorpusGenerator generator, PuzzleRecord[] batch, int firstId, int from,
+      int to) {
+    this.generator = generator;
+    this.batch = batch;
+    this.firstId = firstId;
+    this.from = from;
+    this.to = to;
+  }
+
+  // works out the puzzles from until to of the batch
+  protected void compute() {
+    if (this.to - this.from > this.generator.grain) {
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new GeneratePuzzles(this.generator, this.batch, this.firstId, this.from, middle),
+          new GeneratePuzzles(this.generator, this.batch, this.firstId, middle, this.to));
+      return;
+    }
+    FloodEngine engine = new FloodEngine();
+    for (int k = this.from; k < this.to; k++) {
+      this.batch[k] = this.generator.puzzle(engine, this.firstId + k);
+    }
+  }
+}
+
+// represents a puzzle file mapped into memory: opening it reads the header
+// and nothing else, and every value of a puzzle is read in place by its id.
+// The file is mapped in pieces of at most a gigabyte, and since every value
+// is aligned to its own width no value straddles two pieces
+class PuzzleFile {
+  PuzzleFileFormat format = new PuzzleFileFormat();
+  int pieceBits = 30;
+  ArrayList<MappedByteBuffer> pieces = new ArrayList<MappedByteBuffer>();
+  long count;
+  long[] starts;
+  long heap;
+
+  // maps the puzzle file at the given path
+  PuzzleFile(Path path) throws IOException {
+    FileChannel file = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      long length = file.size();
+      for (long at = 0; at < length; at += 1L << this.pieceBits) {
+        MappedByteBuffer piece = file.map(FileChannel.MapMode.READ_ONLY, at,
+            Math.min(1L << this.pieceBits, length - at));
+        piece.order(ByteOrder.LITTLE_ENDIAN);
+        this.pieces.add(piece);
+      }
+    }
+    finally {
+      file.close();
+    }
+    if (this.pieces.isEmpty() || this.pieces.get(0).limit() < this.format.headerBytes
+        || this.pieces.get(0).getInt(0) != this.format.magic) {
+      throw new IllegalArgumentException("The file is not a puzzle file.");
+    }
+    if (this.pieces.get(0).getInt(4) != this.format.version) {
+      throw new IllegalArgumentException("The puzzle file is of another version.");
+    }
+    this.count = this.pieces.get(0).getLong(8);
+    this.starts = new long[7];
+    for (int k = 0; k < this.starts.length; k++) {
+      this.starts[k] = this.pieces.get(0).getLong(16 + 8 * k);
+    }
+    this.heap = this.format.columnStarts(this.count)[this.starts.length];
+  }
+
+  // number of puzzles in the file
+  long count() {
+    return this.count;
+  }
+
+  // the piece holding the given offset
+  MappedByteBuffer piece(long offset) {
+    return this.pieces.get((int) (offset >>> this.pieceBits));
+  }
+
+  // where the given offset falls within its piece
+  int within(long offset) {
+    return (int) (offset & ((1L << this.pieceBits) - 1));
+  }
+
+  // the long at the given offset
+  long longAt(long offset) {
+    return piece(offset).getLong(within(offset));
+  }
+
+  // the seed that deals the puzzle of the given id
+  long seed(long id) {
+    return longAt(this.starts[0] + id * 8);
+  }
+
+  // the size of the puzzle of the given id
+  int size(long id) {
+    long at = this.starts[1] + id * 4;
+    return piece(at).getInt(within(at));
+  }
+
+  // the number of colors of the puzzle of the given id
+  int colors(long id) {
+    long at = this.starts[2] + id * 2;
+    return piece(at).getShort(within(at)) & 0xFFFF;
+  }
+
+  // checks if the move count of the puzzle of the given id is proven shortest
+  boolean optimal(long id) {
+    long at = this.starts[3] + id;
+    return (piece(at).get(within(at)) & 1) != 0;
+  }
+
+  // the length of the shortest win found for the puzzle of the given id
+  int moves(long id) {
+    long at = this.starts[4] + id * 4;
+    return piece(at).getInt(within(at));
+  }
+
+  // the difficulty score of the puzzle of the given id
+  float difficulty(long id) {
+    long at = this.starts[5] + id * 4;
+    return piece(at).getFloat(within(at));
+  }
+
+  // the palette index of the given cell of the puzzle of the given id
+  int colorAt(long id, int index) {
+    int bits = this.format.bitsPerCell(colors(id));
+    long base = this.heap + longAt(this.starts[6] + id * 8);
+    long bit = (long) index * bits;
+    int shift = (int) (bit & 63);
+    long word = base + ((bit >>> 6) << 3);
+    long value = longAt(word) >>> shift;
+    if (shift + bits > 64) {
+      value |= longAt(word + 8) << (64 - shift);
+    }
+    return (int) (value & ((1L << bits) - 1));
+  }
+
+  // sets the given engine up with the puzzle of the given id, its cells read
+  // from the file rather than dealt
+  void load(long id, FloodEngine engine) {
+    int size = size(id);
+    engine.configure(seed(id), size, colors(id));
+    engine.chooseColors();
+    engine.boardSeed = engine.rand.nextLong();
+    byte[] colors = engine.board.colors;
+    for (int index = 0; index < size * size; index++) {
+      colors[index] = (byte) colorAt(id, index);
+    }
+    engine.board.markAllDirty();
+    engine.board.flooded.clear();
+    engine.startFlood();
+    engine.limitMoves();
+  }
+}
@@ -0,0 +1,139 @@
+package floodit;
+
+// represents the random 64-bit keys behind Zobrist hashing of a position: one
+// key per cell and one per palette color. A position hashes to the XOR of the
+// keys of its flooded cells and the key of the flood's color, so a move only
+// XORs in the cells it captures and swaps the color key. Keys are mixed from
+// the cell index on demand rather than stored, so huge boards cost nothing
+class ZobristKeys {
+  long seed;
+
+  // constructor for the keys drawn from the given seed
+  ZobristKeys(long seed) {
+    this.seed = seed;
+  }
+
+  // the key of the cell at the given index
+  long cellKey(int index) {
+    return mix(this.seed + (index + 1) * 0x9E3779B97F4A7C15L);
+  }
+
+  // the key of the given palette color as the flood's color
+  long colorKey(int color) {
+    return mix(~this.seed - (color + 1) * 0xC2B2AE3D27D4EB4FL);
+  }
+
+  // scrambles the bits of z so that nearby inputs give unrelated keys
+  long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // the hash of the given board worked out cell by cell, for checking the
+  // hashes that are kept up to date move by move
+  long hashOf(PackedBoard board) {
+    long hash = colorKey(board.storedColorIndexAt(0));
+    for (int index = board.flooded.nextSetBit(0); index >= 0;
+        index = board.flooded.nextSetBit(index + 1)) {
+      hash ^= cellKey(index);
+    }
+    return hash;
+  }
+}
+
+// represents a fixed-size cache from position hashes to small int values, so a
+// search can tell in O(1) that it has been at a position before. The table
+// holds capacity entries in buckets of two: the first keeps the entry with the
+// most search still below it, the second always takes the newest one, and
+// entries from an older generation count as free
+class TranspositionTable {
+  // what get returns for a position that is not in the table
+  int missing = Integer.MIN_VALUE;
+
+  int mask;
+  long[] keys;
+  int[] values;
+  int[] priorities;
+  int[] generations;
+  // entries of other generations are stale; 0 marks a slot never used
+  int generation = 1;
+
+  long hits = 0;
+  long misses = 0;
+  long evictions = 0;
+
+  // constructor for a table of at most the given number of entries, rounded
+  // down to a power of two
+  TranspositionTable(int capacity) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("The capacity of the table must be at least 2.");
+    }
+    int entries = Integer.highestOneBit(capacity);
+    this.mask = (entries >>> 1) - 1;
+    this.keys = new long[entries];
+    this.values = new int[entries];
+    this.priorities = new int[entries];
+    this.generations = new int[entries];
+  }
+
+  // number of entries the table holds
+  int capacity() {
+    return this.keys.length;
+  }
+
+  // the first slot of the bucket of the given hash
+  int bucket(long key) {
+    return (int) (key ^ (key >>> 32)) & this.mask;
+  }
+
+  // the value stored for the given hash in this generation, or missing
+  int get(long key) {
+    int slot = bucket(key) << 1;
+    for (int k = slot; k < slot + 2; k++) {
+      if (this.keys[k] == key && this.generations[k] == this.generation) {
+        this.hits++;
+        return this.values[k];
+      }
+    }
+    this.misses++;
+    return this.missing;
+  }
+
+  // stores a value for the given hash; priority is how much work the value
+  // saves, and decides which entry of a full bucket is kept
+  void put(long key, int value, int priority) {
+    int slot = bucket(key) << 1;
+    int kept = slot;
+    int newest = slot + 1;
+    if (this.keys[kept] == key && this.generations[kept] == this.generation) {
+      store(kept, key, value, Math.max(priority, this.priorities[kept]));
+    }
+    else if (this.generations[kept] != this.generation || priority >= this.priorities[kept]) {
+      // the entry it pushes out of the first slot still gets the second one
+      if (this.generations[kept] == this.generation) {
+        store(newest, this.keys[kept], this.values[kept], this.priorities[kept]);
+      }
+      store(kept, key, value, priority);
+    }
+    else {
+      store(newest, key, value, priority);
+    }
+  }
+
+  // writes the entry at the given slot, counting what it overwrites
+  void store(int slot, long key, int value, int priority) {
+    if (this.generations[slot] == this.generation && this.keys[slot] != key) {
+      this.evictions++;
+    }
+    this.keys[slot] = key;
+    this.values[slot] = value;
+    this.priorities[slot] = priority;
+    this.generations[slot] = this.generation;
+  }
+
+  // makes every entry stale at once, without clearing the arrays
+  void nextGeneration() {
+    this.generation++;
+  }
+}
@@ -0,0 +1,67 @@
+package floodit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// measures dealing a board and the queries that read the whole of it, on one
+// game dealt per trial
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class BoardBenchmark {
+  // renderBoardText grows with the square of the cell count, so the largest
+  // size is kept where one call still takes well under a second
+  @Param({ "14", "50", "200" })
+  public int size;
+  @Param({ "3", "6", "8" })
+  public int colors;
+
+  FloodIt world;
+
+  @Setup(Level.Trial)
+  public void deal() {
+    this.world = new FloodIt(this.size, this.colors);
+    this.world.makeBoard();
+  }
+
+  // picks a palette, deals every cell and floods the corner
+  @Benchmark
+  public int makeBoard() {
+    this.world.makeBoard();
+    return this.world.engine.floodedCount;
+  }
+
+  // floods the corner of the dealt board from scratch
+  @Benchmark
+  public int floodBoardCells() {
+    this.world.floodBoardCells();
+    return this.world.engine.floodedCount;
+  }
+
+  // checks if the game is won
+  @Benchmark
+  public boolean isAllFlooded() {
+    return this.world.isAllFlooded();
+  }
+
+  // lists every cell as text
+  @Benchmark
+  public String renderBoardText() {
+    return this.world.renderBoardText();
+  }
+}
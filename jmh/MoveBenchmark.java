@@ -0,0 +1,122 @@
+package floodit;
+
+import java.util.concurrent.TimeUnit;
+
+import javalib.worldimages.Posn;
+import javalib.worldimages.WorldImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// measures the work of moves as the game does them: the click, the capture
+// on the next tick and the redraw of the next frame. A move of a small board
+// takes microseconds, far too little to time one by one, so every iteration
+// is a single shot over a fixed run of moves: the iteration's setup deals a
+// fresh board and rehearses the game on a copy to find the clicks, and each of
+// the batchSize calls timed together plays the next of them. The benchmarks
+// add one stage at a time, so the cost of a stage is the difference between
+// two of them. A click finishes the capture of the move before it, as the
+// engine does whenever the ticks have not caught up
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20, batchSize = 10)
+@Measurement(iterations = 50, batchSize = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class MoveBenchmark {
+  @Param({ "14", "50", "200" })
+  public int size;
+  @Param({ "3", "6", "8" })
+  public int colors;
+
+  // moves rehearsed per iteration, at least the batch size; a game won sooner
+  // clicks the flood itself for the rest, which the world ignores
+  int movesPerRun = 10;
+  long seed = 0;
+  FloodIt world;
+  // the scene positions of the clicks of this iteration's game, in order
+  Posn[] clicks;
+  int next;
+
+  // deals the board of the next seed and works out the clicks of its game
+  @Setup(Level.Iteration)
+  public void deal() {
+    this.seed++;
+    FloodIt rehearsal = new FloodIt(this.size, this.colors, this.seed);
+    rehearsal.makeBoard();
+    this.clicks = new Posn[this.movesPerRun];
+    for (int k = 0; k < this.movesPerRun; k++) {
+      this.clicks[k] = pixelOf(rehearsal, growingCell(rehearsal));
+      rehearsal.onMouseClicked(this.clicks[k]);
+      rehearsal.floodBoardCellsColorOnTick();
+    }
+    this.world = new FloodIt(this.size, this.colors, this.seed);
+    this.world.makeBoard();
+    this.world.renderAllCells();
+    this.next = 0;
+  }
+
+  // an unflooded cell of the given world next to the flood, so clicking it
+  // grows the flood; the top-left cell once the board is won
+  int growingCell(FloodIt world) {
+    PackedBoard board = world.board;
+    int size = board.size;
+    for (int index = board.flooded.nextClearBit(0); index < board.cellCount();
+        index = board.flooded.nextClearBit(index + 1)) {
+      int x = index / size;
+      int y = index % size;
+      if ((x > 0 && board.flooded.get(index - size))
+          || (x < size - 1 && board.flooded.get(index + size))
+          || (y > 0 && board.flooded.get(index - 1))
+          || (y < size - 1 && board.flooded.get(index + 1))) {
+        return index;
+      }
+    }
+    return 0;
+  }
+
+  // the scene position of the middle of the given cell of the given world
+  Posn pixelOf(FloodIt world, int index) {
+    int boardPixels = world.boardPixels();
+    double left = boardPixels - boardPixels / 2.0;
+    double top = boardPixels - (boardPixels + world.triesImage().getHeight()) / 2.0;
+    double cell = (double) boardPixels / this.size;
+    return new Posn((int) (left + (index / this.size + 0.5) * cell),
+        (int) (top + (index % this.size + 0.5) * cell));
+  }
+
+  // the next click
+  @Benchmark
+  public int onMouseClicked() {
+    this.world.onMouseClicked(this.clicks[this.next]);
+    this.next++;
+    return this.world.engine.movesMade;
+  }
+
+  // the next click and the capture of its move on the tick after it
+  @Benchmark
+  public int clickAndTick() {
+    this.world.onMouseClicked(this.clicks[this.next]);
+    this.next++;
+    this.world.floodBoardCellsColorOnTick();
+    return this.world.engine.floodedCount;
+  }
+
+  // the next click, the capture and the redraw of the columns it changed
+  @Benchmark
+  public WorldImage clickTickAndRender() {
+    this.world.onMouseClicked(this.clicks[this.next]);
+    this.next++;
+    this.world.floodBoardCellsColorOnTick();
+    return this.world.renderAllCells();
+  }
+}